@@ -0,0 +1,131 @@
+package dev.dxnny.otterVaults.managers;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups run on every vault command and inventory event, and the index updates
+ * run whenever a vault is opened or closed, with a parameterized number of online players.
+ * The {@code stringKey} benchmarks are the {@code uuid + "-" + number} map that
+ * {@link ActiveVaultIndex} replaced, kept as a baseline for the benchmark of the same name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VaultManagerBenchmark {
+    private static final int VAULTS_PER_PLAYER = 3;
+
+    @Param({"100", "1000", "10000"})
+    public int playerCount;
+
+    private VaultManager vaultManager;
+    private final ActiveVaultIndex activeVaults = new ActiveVaultIndex();
+    private final ConcurrentHashMap<String, Vault> stringKeyVaults = new ConcurrentHashMap<>();
+    private UUID[] players;
+    private int[] vaultNumbers;
+    // A vault of each player that isn't open, and the admin who opens it.
+    private Vault[] closedVaults;
+    private UUID[] admins;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Only loaded holders are looked up, so the database is never reached.
+        vaultManager = new VaultManager(null);
+        players = new UUID[playerCount];
+        vaultNumbers = new int[playerCount];
+        closedVaults = new Vault[playerCount];
+        admins = new UUID[playerCount];
+
+        Random random = new Random(42L);
+        for (int i = 0; i < playerCount; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            players[i] = uuid;
+            vaultNumbers[i] = 1 + random.nextInt(VAULTS_PER_PLAYER);
+
+            VaultHolder holder = new VaultHolder(uuid);
+            for (int number = 1; number <= VAULTS_PER_PLAYER; number++) {
+                holder.addVault(number, new Vault(uuid, number, new byte[0]));
+            }
+            vaultManager.getHolders().put(uuid, holder);
+
+            // Each player has one of their own vaults open.
+            Vault open = holder.getVault(vaultNumbers[i]);
+            vaultManager.activateVault(open, uuid);
+            activeVaults.add(open, uuid);
+            stringKeyVaults.put(vaultKey(uuid, open.getVaultNumber()), open);
+
+            closedVaults[i] = holder.getVault(vaultNumbers[i] % VAULTS_PER_PLAYER + 1);
+            admins[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+    }
+
+    /**
+     * The key the replaced map stored open vaults under.
+     */
+    private static String vaultKey(UUID uuid, int vaultNumber) {
+        return uuid.toString() + "-" + vaultNumber;
+    }
+
+    @Benchmark
+    public Vault getVault() {
+        int i = nextPlayer();
+        return vaultManager.getVault(players[i], vaultNumbers[i]);
+    }
+
+    @Benchmark
+    public boolean isVaultOpen() {
+        int i = nextPlayer();
+        return vaultManager.isVaultOpen(players[i], vaultNumbers[i]);
+    }
+
+    @Benchmark
+    public Vault getActiveVaultForViewer() {
+        return vaultManager.getActiveVaultForViewer(players[nextPlayer()]);
+    }
+
+    @Benchmark
+    public Vault stringKeyLookup() {
+        int i = nextPlayer();
+        return stringKeyVaults.get(vaultKey(players[i], vaultNumbers[i]));
+    }
+
+    @Benchmark
+    public boolean stringKeyIsVaultOpen() {
+        int i = nextPlayer();
+        return stringKeyVaults.containsKey(vaultKey(players[i], vaultNumbers[i]));
+    }
+
+    /**
+     * An admin opens and closes a vault of a player who has another vault open, as
+     * {@code activateVault} and {@code deactivateVault}/{@code unlockVault} update the index.
+     */
+    @Benchmark
+    public int activateDeactivate() {
+        int i = nextPlayer();
+        Vault vault = closedVaults[i];
+        activeVaults.add(vault, admins[i]);
+        activeVaults.remove(vault);
+        return activeVaults.size();
+    }
+
+    @Benchmark
+    public int stringKeyActivateDeactivate() {
+        int i = nextPlayer();
+        Vault vault = closedVaults[i];
+        stringKeyVaults.put(vaultKey(vault.getOwnerUUID(), vault.getVaultNumber()), vault);
+        stringKeyVaults.remove(vaultKey(vault.getOwnerUUID(), vault.getVaultNumber()));
+        return stringKeyVaults.size();
+    }
+
+    private int nextPlayer() {
+        int i = next;
+        next = i + 1 == playerCount ? 0 : i + 1;
+        return i;
+    }
+
+}
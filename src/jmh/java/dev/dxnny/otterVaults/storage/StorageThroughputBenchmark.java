@@ -0,0 +1,86 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dejvokep.boostedyaml.YamlDocument;
+import dev.dxnny.otterVaults.config.Options;
+import dev.dxnny.otterVaults.managers.Vault;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.Serializers;
+import dev.dxnny.otterVaults.util.VaultFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Measures how many single-vault saves per second each backend sustains with several
+ * threads saving at once, as when many players close vaults together. Compares the log
+ * backend's appends against the {@code MERGE INTO vaults} upsert of the H2 backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class StorageThroughputBenchmark {
+    private static final int VAULTS_PER_PLAYER = 10;
+
+    @Param({"h2", "log"})
+    public String backend;
+
+    @Param({"SPARSE", "FULL_SHULKERS"})
+    public VaultFixtures.Fixture fixture;
+
+    private Path dataFolder;
+    private StorageExecutor executor;
+    private AbstractVaultStorage storage;
+    private byte[] stored;
+    private Serializers.ContentHash hash;
+
+    @State(Scope.Thread)
+    public static class Player {
+        private final UUID uuid = UUID.randomUUID();
+        private int nextVaultNumber;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Options.loadOptions(YamlDocument.create(Objects.requireNonNull(getClass().getResourceAsStream("/config.yml"))));
+
+        dataFolder = Path.of("build", "tmp", "jmh", "vaults-" + UUID.randomUUID());
+        Files.createDirectories(dataFolder);
+
+        Logger logger = Logger.getLogger("OtterVaults-Benchmark");
+        executor = new StorageExecutor(logger, Options.getSTORAGE_POOL_SIZE(), Options.getSTORAGE_QUEUE_CAPACITY());
+        storage = backend.equals("log")
+                ? new LogVaultStorage(dataFolder.resolve("vaults").toFile(), logger, executor)
+                : new JdbcVaultStorage(SqlDialect.fromName(backend), dataFolder.toFile(), logger, executor);
+
+        byte[] raw = VaultFixtures.packed(fixture, 42L);
+        stored = Compression.compress(raw);
+        hash = Serializers.contentHash(raw);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown(TimeUnit.SECONDS.toMillis(10));
+        storage.disable();
+        try (Stream<Path> files = Files.walk(dataFolder)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void saveVault(Player player) throws StorageException {
+        int vaultNumber = player.nextVaultNumber++ % VAULTS_PER_PLAYER + 1;
+        storage.persist(new AbstractVaultStorage.PendingWrite(new Vault(player.uuid, vaultNumber, stored), 0, stored, hash));
+    }
+
+}
@@ -0,0 +1,117 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dejvokep.boostedyaml.YamlDocument;
+import dev.dxnny.otterVaults.config.Options;
+import dev.dxnny.otterVaults.managers.Vault;
+import dev.dxnny.otterVaults.managers.VaultHolder;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.Serializers;
+import dev.dxnny.otterVaults.util.VaultFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Measures vault reads and writes against each embedded storage backend, configured
+ * from the bundled config.yml. Items are serialized up front from fixtures, so only
+ * the storage round-trip is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VaultStorageBenchmark {
+
+    @Param({"h2", "sqlite", "log", "memory"})
+    public String backend;
+
+    @Param({"EMPTY", "SPARSE", "FULL_SHULKERS"})
+    public VaultFixtures.Fixture fixture;
+
+    @Param({"1", "10", "50"})
+    public int vaultCount;
+
+    private Path dataFolder;
+    private StorageExecutor executor;
+    private AbstractVaultStorage storage;
+    private byte[] stored;
+    private Serializers.ContentHash hash;
+    private UUID loadedPlayer;
+    private UUID savedPlayer;
+    private int nextVaultNumber;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, StorageException {
+        Options.loadOptions(YamlDocument.create(Objects.requireNonNull(getClass().getResourceAsStream("/config.yml"))));
+
+        // H2 resolves its folder relative to the working directory, like the plugin's data folder.
+        dataFolder = Path.of("build", "tmp", "jmh", "vaults-" + UUID.randomUUID());
+        Files.createDirectories(dataFolder);
+
+        Logger logger = Logger.getLogger("OtterVaults-Benchmark");
+        executor = new StorageExecutor(logger, Options.getSTORAGE_POOL_SIZE(), Options.getSTORAGE_QUEUE_CAPACITY());
+        storage = switch (backend) {
+            case "memory" -> new MemoryVaultStorage(logger, executor);
+            case "log" -> new LogVaultStorage(dataFolder.resolve("vaults").toFile(), logger, executor);
+            default -> new JdbcVaultStorage(SqlDialect.fromName(backend), dataFolder.toFile(), logger, executor);
+        };
+
+        byte[] raw = VaultFixtures.packed(fixture, 42L);
+        stored = Compression.compress(raw);
+        hash = Serializers.contentHash(raw);
+
+        loadedPlayer = UUID.randomUUID();
+        savedPlayer = UUID.randomUUID();
+        storage.persistAll(writesFor(loadedPlayer));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown(TimeUnit.SECONDS.toMillis(10));
+        storage.disable();
+        try (Stream<Path> files = Files.walk(dataFolder)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void saveVault() throws StorageException {
+        int vaultNumber = nextVaultNumber++ % vaultCount + 1;
+        storage.persist(new AbstractVaultStorage.PendingWrite(new Vault(savedPlayer, vaultNumber, stored), 0, stored, hash));
+    }
+
+    @Benchmark
+    public void saveVaults() throws StorageException {
+        storage.persistAll(writesFor(savedPlayer));
+    }
+
+    @Benchmark
+    public Vault loadVault() {
+        return storage.loadVault(loadedPlayer, 1);
+    }
+
+    @Benchmark
+    public VaultHolder loadVaultHolder() {
+        return storage.loadVaultHolder(loadedPlayer);
+    }
+
+    private List<AbstractVaultStorage.PendingWrite> writesFor(UUID playerUUID) {
+        List<AbstractVaultStorage.PendingWrite> writes = new ArrayList<>(vaultCount);
+        for (int vaultNumber = 1; vaultNumber <= vaultCount; vaultNumber++) {
+            writes.add(new AbstractVaultStorage.PendingWrite(new Vault(playerUUID, vaultNumber, stored), 0, stored, hash));
+        }
+        return writes;
+    }
+
+}
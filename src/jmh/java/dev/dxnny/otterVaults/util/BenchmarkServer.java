@@ -0,0 +1,92 @@
+package dev.dxnny.otterVaults.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Stands in for the server's item codec, so benchmarks can run {@link Serializers#serializeInv}
+ * and {@link Serializers#deserializeInv} without a running server. {@code ItemStack#serializeAsBytes}
+ * and {@code ItemStack#deserializeBytes} call into the server's {@link UnsafeValues}, which this
+ * implements with the same work Paper does, through {@link ItemNbt}. Nothing else the server
+ * provides is available.
+ */
+final class BenchmarkServer {
+    // The data components of each fixture item, which an API ItemStack can't carry without a server.
+    private static final Map<ItemStack, ItemNbt.Item> items = Collections.synchronizedMap(new IdentityHashMap<>());
+    private static boolean installed;
+
+    private BenchmarkServer() {
+    }
+
+    /**
+     * Creates a stack of the given item, serialized with all of its data components.
+     *
+     * @param item the item the stack stands for
+     * @return the stack
+     */
+    static ItemStack stackOf(ItemNbt.Item item) {
+        install();
+        ItemStack stack = new ItemStack(Material.matchMaterial(item.id()), item.count());
+        items.put(stack, item);
+        return stack;
+    }
+
+    private static synchronized void install() {
+        if (installed) return;
+
+        UnsafeValues unsafe = proxy(UnsafeValues.class, (proxy, method, args) -> switch (method.getName()) {
+            case "serializeItem" -> ItemNbt.encode(itemOf((ItemStack) args[0]));
+            case "deserializeItem" -> {
+                Map<String, Object> item = ItemNbt.decode((byte[]) args[0]);
+                yield new ItemStack(Material.matchMaterial((String) item.get("id")), (Integer) item.get("count"));
+            }
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+        Logger logger = Logger.getLogger("BenchmarkServer");
+        Server server = proxy(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getUnsafe" -> unsafe;
+            case "getLogger" -> logger;
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+
+        // Set directly, as Bukkit#setServer reads build information only a real server has.
+        try {
+            Field field = Bukkit.class.getDeclaredField("server");
+            field.setAccessible(true);
+            field.set(null, server);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not install the benchmark server", e);
+        }
+        installed = true;
+    }
+
+    private static ItemNbt.Item itemOf(ItemStack stack) {
+        ItemNbt.Item item = items.get(stack);
+        return item != null ? item : ItemNbt.Item.plain(stack.getType().getKey().toString(), stack.getAmount());
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + " stand-in";
+                };
+            }
+            return handler.invoke(proxy, method, args);
+        }));
+    }
+
+}
@@ -0,0 +1,41 @@
+package dev.dxnny.otterVaults.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures compressing and decompressing packed vault bytes with each codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    @Param({"EMPTY", "SPARSE", "FULL_SHULKERS"})
+    public VaultFixtures.Fixture fixture;
+
+    @Param({"NONE", "DEFLATE", "LZ4"})
+    public Compression.Codec codec;
+
+    private byte[] packed;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() {
+        Compression.configure(codec, 6, false);
+        packed = VaultFixtures.packed(fixture, 42L);
+        compressed = Compression.compress(packed);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return Compression.compress(packed);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        return Compression.decompress(compressed);
+    }
+
+}
@@ -0,0 +1,167 @@
+package dev.dxnny.otterVaults.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes items the way {@code ItemStack#serializeAsBytes} does on a 1.21.1 server: the item's
+ * data components as a named NBT compound, stamped with the data version, and GZIP compressed.
+ * Lets benchmarks work on bytes shaped like real vault contents without a running server.
+ */
+final class ItemNbt {
+    // The data version of Minecraft 1.21.1.
+    static final int DATA_VERSION = 3955;
+
+    private static final byte TAG_END = 0;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_STRING = 8;
+    private static final byte TAG_LIST = 9;
+    private static final byte TAG_COMPOUND = 10;
+
+    private ItemNbt() {
+    }
+
+    /**
+     * An item as its data components describe it.
+     *
+     * @param id the item's key, such as {@code minecraft:diamond_sword}
+     * @param count the stack size
+     * @param damage the durability lost, or {@code 0}
+     * @param enchantments the level of each enchantment, by key
+     * @param contents the items held by a container item, such as a shulker box, with {@code null} for empty slots
+     */
+    record Item(String id, int count, int damage, Map<String, Integer> enchantments, Item[] contents) {
+
+        static Item plain(String id, int count) {
+            return new Item(id, count, 0, Map.of(), null);
+        }
+    }
+
+    /**
+     * Serializes an item into the bytes the server stores for it.
+     *
+     * @param item the item to be serialized
+     * @return the GZIP compressed NBT of the item
+     */
+    static byte[] encode(Item item) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeByte(TAG_COMPOUND);
+            out.writeUTF("");
+            writeInt(out, "DataVersion", DATA_VERSION);
+            writeItem(out, item);
+            out.writeByte(TAG_END);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Parses the bytes written by {@link #encode(Item)}, reading every tag as the server does.
+     *
+     * @param data the GZIP compressed NBT of an item
+     * @return the item's root compound, by tag name
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            if (in.readByte() != TAG_COMPOUND) throw new IllegalArgumentException("Not an NBT compound");
+            in.readUTF();
+            return (Map<String, Object>) readPayload(in, TAG_COMPOUND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeItem(DataOutputStream out, Item item) throws IOException {
+        writeString(out, "id", item.id());
+        writeInt(out, "count", item.count());
+        if (item.damage() == 0 && item.enchantments().isEmpty() && item.contents() == null) return;
+
+        startCompound(out, "components");
+        if (item.damage() > 0) {
+            writeInt(out, "minecraft:damage", item.damage());
+        }
+        if (!item.enchantments().isEmpty()) {
+            startCompound(out, "minecraft:enchantments");
+            startCompound(out, "levels");
+            for (Map.Entry<String, Integer> enchantment : item.enchantments().entrySet()) {
+                writeInt(out, enchantment.getKey(), enchantment.getValue());
+            }
+            out.writeByte(TAG_END);
+            out.writeByte(TAG_END);
+        }
+        if (item.contents() != null) {
+            List<Integer> filled = new ArrayList<>();
+            for (int slot = 0; slot < item.contents().length; slot++) {
+                if (item.contents()[slot] != null) filled.add(slot);
+            }
+            out.writeByte(TAG_LIST);
+            out.writeUTF("minecraft:container");
+            out.writeByte(TAG_COMPOUND);
+            out.writeInt(filled.size());
+            for (int slot : filled) {
+                writeInt(out, "slot", slot);
+                startCompound(out, "item");
+                writeItem(out, item.contents()[slot]);
+                out.writeByte(TAG_END);
+                out.writeByte(TAG_END);
+            }
+        }
+        out.writeByte(TAG_END);
+    }
+
+    private static void startCompound(DataOutputStream out, String name) throws IOException {
+        out.writeByte(TAG_COMPOUND);
+        out.writeUTF(name);
+    }
+
+    private static void writeInt(DataOutputStream out, String name, int value) throws IOException {
+        out.writeByte(TAG_INT);
+        out.writeUTF(name);
+        out.writeInt(value);
+    }
+
+    private static void writeString(DataOutputStream out, String name, String value) throws IOException {
+        out.writeByte(TAG_STRING);
+        out.writeUTF(name);
+        out.writeUTF(value);
+    }
+
+    private static Object readPayload(DataInputStream in, byte type) throws IOException {
+        return switch (type) {
+            case TAG_INT -> in.readInt();
+            case TAG_STRING -> in.readUTF();
+            case TAG_LIST -> {
+                byte elementType = in.readByte();
+                int length = in.readInt();
+                List<Object> list = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    list.add(readPayload(in, elementType));
+                }
+                yield list;
+            }
+            case TAG_COMPOUND -> {
+                Map<String, Object> compound = new LinkedHashMap<>();
+                byte tag;
+                while ((tag = in.readByte()) != TAG_END) {
+                    compound.put(in.readUTF(), readPayload(in, tag));
+                }
+                yield compound;
+            }
+            default -> throw new IllegalArgumentException("Unexpected NBT tag " + type);
+        };
+    }
+
+}
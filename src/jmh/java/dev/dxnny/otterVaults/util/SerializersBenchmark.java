@@ -0,0 +1,58 @@
+package dev.dxnny.otterVaults.util;
+
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures vault (de)serialization: whole inventories through {@link Serializers#serializeInv}
+ * and {@link Serializers#deserializeInv}, with {@link BenchmarkServer} doing the server's
+ * per-item encoding, and on its own the packing of slot bytes into the compact format,
+ * and hashing the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializersBenchmark {
+
+    @Param({"EMPTY", "SPARSE", "FULL_SHULKERS"})
+    public VaultFixtures.Fixture fixture;
+
+    private ItemStack[] contents;
+    private byte[][] slots;
+    private byte[] packed;
+
+    @Setup
+    public void setup() {
+        contents = VaultFixtures.contents(fixture, 42L);
+        slots = VaultFixtures.slots(fixture, 42L);
+        packed = Serializers.pack(slots);
+    }
+
+    @Benchmark
+    public byte[] serializeInv() {
+        return Serializers.serializeInv(contents);
+    }
+
+    @Benchmark
+    public ItemStack[] deserializeInv() {
+        return Serializers.deserializeInv(packed);
+    }
+
+    @Benchmark
+    public byte[] pack() {
+        return Serializers.pack(slots);
+    }
+
+    @Benchmark
+    public byte[][] unpack() {
+        return Serializers.unpack(packed);
+    }
+
+    @Benchmark
+    public Serializers.ContentHash contentHash() {
+        return Serializers.contentHash(packed);
+    }
+
+}
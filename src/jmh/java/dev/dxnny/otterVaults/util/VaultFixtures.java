@@ -0,0 +1,117 @@
+package dev.dxnny.otterVaults.util;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Vault contents for benchmarks, built from the items players actually keep in vaults.
+ * Each non-empty slot holds the bytes the server stores for its item, as written by
+ * {@code ItemStack#serializeAsBytes}: GZIP compressed NBT of the item's data components,
+ * including the enchantments, damage and container contents that make up most of a real vault.
+ * Fixtures are seeded, so every run measures the same bytes.
+ */
+public final class VaultFixtures {
+    public static final int SLOT_COUNT = 54;
+
+    private static final String[] BLOCKS = {"minecraft:cobblestone", "minecraft:oak_log", "minecraft:iron_ingot", "minecraft:bread", "minecraft:torch", "minecraft:redstone"};
+    private static final String[] GEAR = {"minecraft:netherite_sword", "minecraft:netherite_pickaxe", "minecraft:netherite_helmet",
+            "minecraft:netherite_chestplate", "minecraft:netherite_leggings", "minecraft:netherite_boots", "minecraft:bow", "minecraft:trident"};
+    private static final String[] ENCHANTMENTS = {"minecraft:sharpness", "minecraft:protection", "minecraft:unbreaking", "minecraft:mending",
+            "minecraft:efficiency", "minecraft:fortune", "minecraft:looting", "minecraft:fire_aspect", "minecraft:power", "minecraft:feather_falling"};
+    private static final String[] SHULKER_COLORS = {"white", "orange", "magenta", "light_blue", "yellow", "lime", "pink", "gray", "cyan", "purple", "blue", "black"};
+
+    public enum Fixture {
+        /** No items at all. */
+        EMPTY,
+        /** A handful of plain stacks and one enchanted tool. */
+        SPARSE,
+        /** Every slot holds a shulker box full of heavily-enchanted gear. */
+        FULL_SHULKERS
+    }
+
+    private VaultFixtures() {
+    }
+
+    /**
+     * Creates the per-slot item bytes of the given fixture.
+     *
+     * @param fixture the fixture to create
+     * @param seed the seed the items are chosen from
+     * @return the serialized item of each slot, with {@code null} for empty slots
+     */
+    public static byte[][] slots(Fixture fixture, long seed) {
+        ItemNbt.Item[] items = items(fixture, seed);
+        byte[][] slots = new byte[SLOT_COUNT][];
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            if (items[slot] != null) slots[slot] = ItemNbt.encode(items[slot]);
+        }
+        return slots;
+    }
+
+    /**
+     * Creates the packed vault bytes of the given fixture, as {@link Serializers#serializeInv} would.
+     *
+     * @param fixture the fixture to create
+     * @param seed the seed the items are chosen from
+     * @return the packed vault bytes
+     */
+    public static byte[] packed(Fixture fixture, long seed) {
+        return Serializers.pack(slots(fixture, seed));
+    }
+
+    /**
+     * Creates the inventory contents of the given fixture, for {@link Serializers#serializeInv}.
+     * Installs {@link BenchmarkServer}, which serializes the stacks to the same bytes as {@link #slots}.
+     *
+     * @param fixture the fixture to create
+     * @param seed the seed the items are chosen from
+     * @return the stack in each slot, with {@code null} for empty slots
+     */
+    public static ItemStack[] contents(Fixture fixture, long seed) {
+        ItemNbt.Item[] items = items(fixture, seed);
+        ItemStack[] contents = new ItemStack[SLOT_COUNT];
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            if (items[slot] != null) contents[slot] = BenchmarkServer.stackOf(items[slot]);
+        }
+        return contents;
+    }
+
+    private static ItemNbt.Item[] items(Fixture fixture, long seed) {
+        Random random = new Random(seed);
+        ItemNbt.Item[] items = new ItemNbt.Item[SLOT_COUNT];
+        switch (fixture) {
+            case EMPTY -> {
+            }
+            case SPARSE -> {
+                for (int slot : new int[]{0, 1, 2, 9, 17}) {
+                    items[slot] = ItemNbt.Item.plain(BLOCKS[random.nextInt(BLOCKS.length)], 1 + random.nextInt(64));
+                }
+                items[26] = gear(random, "minecraft:diamond_pickaxe");
+            }
+            case FULL_SHULKERS -> {
+                for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                    ItemNbt.Item[] box = new ItemNbt.Item[27];
+                    for (int i = 0; i < box.length; i++) {
+                        box[i] = gear(random, GEAR[random.nextInt(GEAR.length)]);
+                    }
+                    String color = SHULKER_COLORS[random.nextInt(SHULKER_COLORS.length)];
+                    items[slot] = new ItemNbt.Item("minecraft:" + color + "_shulker_box", 1, 0, Map.of(), box);
+                }
+            }
+        }
+        return items;
+    }
+
+    private static ItemNbt.Item gear(Random random, String id) {
+        Map<String, Integer> enchantments = new LinkedHashMap<>();
+        int count = 3 + random.nextInt(4);
+        while (enchantments.size() < count) {
+            enchantments.put(ENCHANTMENTS[random.nextInt(ENCHANTMENTS.length)], 1 + random.nextInt(5));
+        }
+        return new ItemNbt.Item(id, 1, random.nextInt(400), enchantments, null);
+    }
+
+}
@@ -8,20 +8,31 @@ import dev.dxnny.otterVaults.commands.VaultCommand;
 import dev.dxnny.otterVaults.lang.Messages;
 import dev.dxnny.otterVaults.listeners.PlayerEventListener;
 import dev.dxnny.otterVaults.listeners.PlayerInstanceListener;
+import dev.dxnny.otterVaults.managers.AutosaveTask;
 import dev.dxnny.otterVaults.managers.VaultManager;
-import dev.dxnny.otterVaults.storage.TaskLimiter;
-import dev.dxnny.otterVaults.storage.VaultDatabase;
+import dev.dxnny.otterVaults.metrics.PrometheusExporter;
+import dev.dxnny.otterVaults.metrics.VaultMetrics;
+import dev.dxnny.otterVaults.storage.ConcurrencyTuner;
+import dev.dxnny.otterVaults.storage.StorageExecutor;
+import dev.dxnny.otterVaults.storage.VaultStorage;
 import dev.dxnny.otterVaults.util.Scheduler;
 import lombok.Getter;
 import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Registry;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.stream.IntStream;
 
 public final class OtterVaults extends JavaPlugin {
     private YamlDocument config;
@@ -29,35 +40,90 @@ public final class OtterVaults extends JavaPlugin {
     @Getter
     private static VaultManager vaultManager;
     @Getter
-    private static TaskLimiter taskLimiter;
+    private static StorageExecutor storageExecutor;
     @Getter
     private static Scheduler scheduler;
-    private static VaultDatabase database;
+    private static VaultStorage storage;
     private static boolean DEBUG;
 
     @Override
     public void onEnable() {
         instance = this;
-        taskLimiter = new TaskLimiter(15);
         scheduler = new Scheduler(this);
 
-        loadConfig();
+        try {
+            loadConfig();
+        } catch (IllegalArgumentException e) {
+            getLogger().severe(e.getMessage() + ". Disabling the plugin until the config is fixed.");
+            Bukkit.getPluginManager().disablePlugin(this);
+            return;
+        }
         DEBUG = Options.isDEBUG();
         Messages.initialize(this);
+        storageExecutor = new StorageExecutor(getLogger(), Options.getSTORAGE_POOL_SIZE(), Options.getSTORAGE_QUEUE_CAPACITY());
 
-        debug("Initializing database...");
-        database = new VaultDatabase(this);
-        vaultManager = new VaultManager(database);
+        debug("Initializing " + Options.getSTORAGE_BACKEND() + " storage...");
+        try {
+            storage = VaultStorage.create(getDataFolder(), getLogger(), storageExecutor);
+        } catch (IllegalArgumentException e) {
+            getLogger().severe(e.getMessage() + ". Disabling the plugin, so vaults aren't stored in the wrong place.");
+            Bukkit.getPluginManager().disablePlugin(this);
+            return;
+        }
+        storage.replayRecovery(recoveryFile());
+        if (Options.isSTORAGE_POOL_AUTO()) {
+            ConcurrencyTuner tuner = new ConcurrencyTuner(storageExecutor, storage::resizePool, getLogger(), Options.getSTORAGE_POOL_MIN_SIZE(), Options.getSTORAGE_POOL_SIZE());
+            long tuningTicks = Math.max(1, Options.getSTORAGE_TUNING_INTERVAL_SECONDS()) * 20L;
+            scheduler.runTimer(tuner, tuningTicks, tuningTicks);
+        }
+        vaultManager = new VaultManager(storage);
+        if (Options.isMIGRATE_LEGACY_BLOBS()) {
+            storage.migrateLegacyBlobs();
+        }
+        long idleReleaseMillis = TimeUnit.SECONDS.toMillis(Options.getIDLE_RELEASE_SECONDS());
+        scheduler.runTimer(() -> {
+            int released = vaultManager.releaseIdleVaults(idleReleaseMillis);
+            if (released > 0) debug("Released " + released + " idle vault inventories.");
+            VaultMetrics.rollMinute();
+        }, 20L * 60, 20L * 60);
+        if (Options.getAUTOSAVE_INTERVAL_SECONDS() > 0) {
+            scheduler.runTimer(new AutosaveTask(vaultManager, storage, Options.getAUTOSAVE_INTERVAL_SECONDS(), Options.getAUTOSAVE_TICK_BUDGET_MS()), 1L, 1L);
+        }
+        if (Options.isMETRICS_PROMETHEUS_FILE()) {
+            PrometheusExporter exporter = new PrometheusExporter(getDataFolder().toPath().resolve("metrics.prom"), vaultManager, storageExecutor);
+            long intervalTicks = Math.max(1, Options.getMETRICS_INTERVAL_SECONDS()) * 20L;
+            scheduler.runTimer(() -> storageExecutor.submit(StorageExecutor.Priority.LOW, () -> {
+                try {
+                    exporter.write();
+                } catch (IOException e) {
+                    getLogger().log(Level.WARNING, "Error while writing metrics!", e);
+                }
+            }), intervalTicks, intervalTicks);
+        }
 
         // Register events
         debug("Registering listeners...");
         PluginManager manager = getServer().getPluginManager();
         manager.registerEvents(new PlayerEventListener(vaultManager), this);
-        manager.registerEvents(new PlayerInstanceListener(vaultManager, database), this);
+        manager.registerEvents(new PlayerInstanceListener(vaultManager), this);
 
         // Register commands
         debug("Registering commands...");
         final PaperCommandManager commandManager = new PaperCommandManager(this);
+        commandManager.getCommandCompletions().registerCompletion("vaults", context -> {
+            Player player = context.getPlayer();
+            if (player == null) return List.of();
+
+            int allowance = Math.min(vaultManager.getVaultAllowance(player), Options.getMAX_VAULT_COUNT());
+            return IntStream.rangeClosed(1, allowance).mapToObj(String::valueOf).toList();
+        });
+        commandManager.getCommandCompletions().registerStaticCompletion("materials", Arrays.stream(Material.values())
+                .filter(material -> !material.isLegacy() && material.isItem() && !material.isAir())
+                .map(material -> material.name().toLowerCase())
+                .toList());
+        commandManager.getCommandCompletions().registerStaticCompletion("enchantments", Registry.ENCHANTMENT.stream()
+                .map(enchantment -> enchantment.getKey().getKey())
+                .toList());
         commandManager.registerCommand(new VaultCommand(vaultManager));
 
     }
@@ -65,14 +131,22 @@ public final class OtterVaults extends JavaPlugin {
     @Override
     public void onDisable() {
 
-        // Shutdown properly, flushing all vaults
-        // synchronously to ensure data is saved.
+        // Shutdown properly, flushing all vaults in parallel before the
+        // deadline, and keeping any that miss it in the recovery file.
         debug("Saving vaults...");
-        vaultManager.flushAllVaults();
+        if (vaultManager != null) {
+            vaultManager.flushAllVaults(TimeUnit.SECONDS.toMillis(Options.getSHUTDOWN_TIMEOUT_SECONDS()), recoveryFile());
+        }
         debug("Shutting down all tasks...");
         Bukkit.getScheduler().cancelTasks(this);
-        if (taskLimiter != null) {
-            taskLimiter.shutdown();
+        if (storage != null) {
+            storage.stopBackgroundTasks();
+        }
+        if (storageExecutor != null) {
+            storageExecutor.shutdown(TimeUnit.SECONDS.toMillis(Options.getSHUTDOWN_TIMEOUT_SECONDS()));
+        }
+        if (storage != null) {
+            storage.disable();
         }
         debug("Shutdown complete!");
 
@@ -91,6 +165,13 @@ public final class OtterVaults extends JavaPlugin {
         Options.loadOptions(config);
     }
 
+    /**
+     * @return the file vaults not saved in time on shutdown are kept in until the next start
+     */
+    private File recoveryFile() {
+        return new File(getDataFolder(), "recovery.dat");
+    }
+
     /**
      * Logs the message provided if debug mode is enabled.
      *
@@ -110,12 +191,12 @@ public final class OtterVaults extends JavaPlugin {
     }
 
     /**
-     * Provides access to the singleton instance of the {@code VaultDatabase}.
+     * Provides access to the configured {@code VaultStorage} backend.
      *
-     * @return The singleton instance of {@code VaultDatabase}, initialized and ready for use.
+     * @return The singleton instance of {@code VaultStorage}, initialized and ready for use.
      */
-    public static VaultDatabase DATABASE() {
-        return database;
+    public static VaultStorage STORAGE() {
+        return storage;
     }
 
 }
@@ -2,11 +2,20 @@ package dev.dxnny.otterVaults.commands;
 
 import co.aikar.commands.BaseCommand;
 import co.aikar.commands.annotation.*;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.dxnny.otterVaults.OtterVaults;
 import dev.dxnny.otterVaults.lang.Messages;
 import dev.dxnny.otterVaults.managers.Vault;
 import dev.dxnny.otterVaults.managers.VaultManager;
+import dev.dxnny.otterVaults.metrics.LatencyHistogram;
+import dev.dxnny.otterVaults.metrics.VaultMetrics;
+import dev.dxnny.otterVaults.storage.StorageExecutor;
+import dev.dxnny.otterVaults.storage.VaultStorage;
 import dev.dxnny.otterVaults.util.ArgumentParser;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.ItemCounts;
 import dev.dxnny.otterVaults.util.Permissions;
+import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
@@ -15,12 +24,15 @@ import org.bukkit.entity.Player;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static dev.dxnny.otterVaults.lang.Messages.*;
 
 @CommandAlias("vaults|ottervaults|playervaults|pv")
 public class VaultCommand extends BaseCommand {
+    private static final int DICTIONARY_SAMPLE_SIZE = 500;
+    private static final int SEARCH_PAGE_SIZE = 10;
     private final VaultManager vaultManager;
 
     public VaultCommand(VaultManager vaultManager) {
@@ -28,7 +40,7 @@ public class VaultCommand extends BaseCommand {
     }
 
     @Default
-    @CommandCompletion("@players")
+    @CommandCompletion("@players @vaults")
     @CommandPermission(Permissions.COMMAND_USE)
     @Description("Open a vault or one of another player. Lists vaults if no number provided")
     @Syntax("[player] [vault]")
@@ -57,13 +69,189 @@ public class VaultCommand extends BaseCommand {
         }
     }
 
+    @Subcommand("admin compression")
+    @CommandPermission(Permissions.ADMIN)
+    @Description("Reports the compression ratio and encode/decode cost of vault data")
+    public void onCompressionReport(CommandSender sender) {
+        long raw = Compression.getRawBytes();
+        long stored = Compression.getStoredBytes();
+        int dictionaryId = Compression.getActiveDictionaryId();
+
+        sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_COMPRESSION_REPORT,
+                Placeholder.parsed("codec", Compression.getCodec().name().toLowerCase()),
+                Placeholder.parsed("dictionary", dictionaryId == 0 ? "none" : "#" + dictionaryId),
+                Placeholder.parsed("ratio", stored == 0 ? "1.00" : String.format("%.2f", (double) raw / stored)),
+                Placeholder.parsed("raw", formatBytes(raw)),
+                Placeholder.parsed("stored", formatBytes(stored)),
+                Placeholder.parsed("encode_avg", averageMicros(Compression.getEncodeNanos(), Compression.getEncodeCount())),
+                Placeholder.parsed("encode_count", String.valueOf(Compression.getEncodeCount())),
+                Placeholder.parsed("decode_avg", averageMicros(Compression.getDecodeNanos(), Compression.getDecodeCount())),
+                Placeholder.parsed("decode_count", String.valueOf(Compression.getDecodeCount()))));
+    }
+
+    @Subcommand("admin compression train")
+    @CommandPermission(Permissions.ADMIN)
+    @Description("Trains a compression dictionary from a sample of stored vaults")
+    public void onCompressionTrain(CommandSender sender) {
+        sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_COMPRESSION_TRAINING));
+        OtterVaults.getStorageExecutor().submit(StorageExecutor.Priority.NORMAL, () -> {
+            int id = OtterVaults.STORAGE().trainDictionary(DICTIONARY_SAMPLE_SIZE);
+            OtterVaults.getScheduler().runSync(() -> sender.sendMessage(id < 0
+                    ? parsedMessage(Messages.COMMANDS_ADMIN_COMPRESSION_TRAIN_FAILED)
+                    : parsedMessage(Messages.COMMANDS_ADMIN_COMPRESSION_TRAINED, Placeholder.parsed("id", String.valueOf(id)))));
+        });
+    }
+
+    @Subcommand("stats")
+    @CommandPermission(Permissions.ADMIN)
+    @Description("Reports storage latencies, queue depth, holder counts and write volume")
+    public void onStats(CommandSender sender) {
+        StorageExecutor executor = OtterVaults.getStorageExecutor();
+        CacheStats holderCache = vaultManager.getHolderCacheStats();
+        sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_STATS,
+                Placeholder.parsed("load", formatLatency(VaultMetrics.getLOAD_LATENCY())),
+                Placeholder.parsed("save", formatLatency(VaultMetrics.getSAVE_LATENCY())),
+                Placeholder.parsed("serialize", formatLatency(VaultMetrics.getSERIALIZE_LATENCY())),
+                Placeholder.parsed("deserialize", formatLatency(VaultMetrics.getDESERIALIZE_LATENCY())),
+                Placeholder.parsed("pool_wait", formatLatency(VaultMetrics.getPOOL_WAIT())),
+                Placeholder.parsed("pool_timeouts", String.valueOf(VaultMetrics.getPoolTimeouts())),
+                Placeholder.parsed("queue_depth", String.valueOf(executor.getQueueDepth())),
+                Placeholder.parsed("queue_active", String.valueOf(executor.getActiveCount())),
+                Placeholder.parsed("queue_overflow", String.valueOf(executor.getOverflowCount())),
+                Placeholder.parsed("holders_active", String.valueOf(vaultManager.getHolders().size())),
+                Placeholder.parsed("holders_cached", String.valueOf(vaultManager.getCachedHolderCount())),
+                Placeholder.parsed("holders_cached_size", formatBytes(vaultManager.getCachedHolderBytes())),
+                Placeholder.parsed("holder_cache_rate", hitRate(holderCache.hitCount(), holderCache.missCount())),
+                Placeholder.parsed("holder_cache_hits", String.valueOf(holderCache.hitCount())),
+                Placeholder.parsed("holder_cache_misses", String.valueOf(holderCache.missCount())),
+                Placeholder.parsed("holder_cache_evictions", String.valueOf(holderCache.evictionCount())),
+                Placeholder.parsed("offheap_rate", hitRate(VaultMetrics.getOffHeapHits(), VaultMetrics.getOffHeapMisses())),
+                Placeholder.parsed("offheap_hits", String.valueOf(VaultMetrics.getOffHeapHits())),
+                Placeholder.parsed("offheap_misses", String.valueOf(VaultMetrics.getOffHeapMisses())),
+                Placeholder.parsed("offheap_size", formatBytes(VaultMetrics.getOFFHEAP_CACHE_BYTES())),
+                Placeholder.parsed("open_vaults", String.valueOf(vaultManager.getActiveVaults().size())),
+                Placeholder.parsed("prefetch_rate", hitRate(VaultMetrics.getPrefetchHits(), VaultMetrics.getPrefetchMisses())),
+                Placeholder.parsed("prefetch_hits", String.valueOf(VaultMetrics.getPrefetchHits())),
+                Placeholder.parsed("prefetch_misses", String.valueOf(VaultMetrics.getPrefetchMisses())),
+                Placeholder.parsed("written_minute", formatBytes(VaultMetrics.getBYTES_WRITTEN_LAST_MINUTE())),
+                Placeholder.parsed("written_total", formatBytes(VaultMetrics.getBytesWritten()))));
+    }
+
+    @Subcommand("search")
+    @CommandPermission(Permissions.ADMIN)
+    @CommandCompletion("@materials @enchantments")
+    @Description("Lists the vaults holding an item, optionally with an enchantment, largest amounts first")
+    @Syntax("<material> [enchantment] [page]")
+    public void onSearch(CommandSender sender, @Name("material") String materialName, @Optional @Name("enchantment") String second, @Optional @Name("page") String third) {
+        String material = ItemCounts.parseMaterial(materialName);
+        if (material == null) {
+            sender.sendMessage(parsedMessage(Messages.ERROR_INVALID_MATERIAL));
+            return;
+        }
+
+        // The enchantment may be left out, in which case the page comes second.
+        String enchantmentName = second != null && !isNumber(second) ? second : null;
+        String pageString = enchantmentName == null ? second : third;
+        String component = "";
+        if (enchantmentName != null) {
+            component = ItemCounts.parseEnchantment(enchantmentName);
+            if (component == null) {
+                sender.sendMessage(parsedMessage(Messages.ERROR_INVALID_ENCHANTMENT));
+                return;
+            }
+        }
+        int page = pageString == null ? 1 : (isNumber(pageString) ? Integer.parseInt(pageString) : 0);
+        if (page <= 0) {
+            sender.sendMessage(parsedMessage(Messages.ERROR_INVALID_NUMBER));
+            return;
+        }
+
+        String item = material.toLowerCase() + (component.isEmpty() ? "" : " with " + component);
+        String searchArgs = material.toLowerCase() + (component.isEmpty() ? "" : " " + component);
+        VaultStorage storage = OtterVaults.STORAGE();
+        long startTime = System.nanoTime();
+        // One more than a page is read, to tell whether there is a next page.
+        storage.searchItemsAsync(material, component, (page - 1) * SEARCH_PAGE_SIZE, SEARCH_PAGE_SIZE + 1).whenComplete((matches, error) -> {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            boolean complete = storage.isItemIndexComplete();
+            OtterVaults.getScheduler().runSync(() -> sendSearchResults(sender, error == null ? matches : null, item, searchArgs, page, elapsedMs, complete));
+        });
+    }
+
+    /**
+     * Replies to a search with a page of results. Must be called on the main thread.
+     */
+    private void sendSearchResults(CommandSender sender, List<VaultStorage.ItemMatch> matches, String item, String searchArgs, int page, long elapsedMs, boolean complete) {
+        if (matches == null) {
+            sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_SEARCH_UNAVAILABLE));
+            return;
+        }
+        if (!complete) {
+            sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_SEARCH_INCOMPLETE));
+        }
+        if (matches.isEmpty()) {
+            sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_SEARCH_NONE, Placeholder.parsed("item", item)));
+            return;
+        }
+
+        sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_SEARCH_HEADER,
+                Placeholder.parsed("item", item),
+                Placeholder.parsed("page", String.valueOf(page)),
+                Placeholder.parsed("time", String.valueOf(elapsedMs))));
+        int rank = (page - 1) * SEARCH_PAGE_SIZE;
+        for (VaultStorage.ItemMatch match : matches.subList(0, Math.min(matches.size(), SEARCH_PAGE_SIZE))) {
+            String name = Bukkit.getOfflinePlayer(match.ownerUUID()).getName();
+            String owner = name != null ? name : match.ownerUUID().toString();
+            sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_SEARCH_ENTRY,
+                    Placeholder.parsed("rank", String.valueOf(++rank)),
+                    Placeholder.parsed("player", owner),
+                    Placeholder.parsed("number", String.valueOf(match.vaultNumber())),
+                    Placeholder.parsed("amount", String.valueOf(match.amount())),
+                    Placeholder.styling("open", ClickEvent.runCommand("/vaults " + owner + " " + match.vaultNumber()))));
+        }
+        if (matches.size() > SEARCH_PAGE_SIZE) {
+            String next = "/vaults search " + searchArgs + " " + (page + 1);
+            sender.sendMessage(parsedMessage(Messages.COMMANDS_ADMIN_SEARCH_MORE,
+                    Placeholder.parsed("command", next),
+                    Placeholder.styling("next", ClickEvent.runCommand(next))));
+        }
+    }
+
+    private static boolean isNumber(String input) {
+        return !input.isEmpty() && input.length() <= 9 && input.chars().allMatch(Character::isDigit);
+    }
+
+    private static String formatLatency(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        return String.format("%.2f / %.2f / %.2fms, %d", snapshot.p50Millis(), snapshot.p99Millis(), snapshot.maxMillis(), snapshot.count());
+    }
+
+    private static String hitRate(long hits, long misses) {
+        return hits + misses == 0 ? "-" : String.format("%.1f%%", 100.0 * hits / (hits + misses));
+    }
+
+    private static String averageMicros(long totalNanos, long count) {
+        return count == 0 ? "0" : String.format("%.1f", totalNanos / 1000.0 / count);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KiB", bytes / 1024.0);
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Lists or opens the target's vaults. Vaults that aren't in memory are loaded on the
+     * storage executor, and the reply is sent from the main thread once they are.
+     */
     private boolean handleCommand(Player player, UUID targetUUID, int vaultNumber) {
         if (vaultNumber <= 0) {
-            List<Integer> vaults = vaultManager.getVaultNumbers(targetUUID);
-            String vaultList = vaults.isEmpty() ? "None" : vaults.stream()
-                    .map(String::valueOf)
-                    .collect(Collectors.joining(", "));
-            mmSend(player, Messages.COMMANDS_VAULT_LIST, Placeholder.parsed("vaults", vaultList));
+            vaultManager.getVaultNumbersAsync(targetUUID).thenAccept(vaults -> OtterVaults.getScheduler().runSync(() -> {
+                String vaultList = vaults.isEmpty() ? "None" : vaults.stream()
+                        .map(String::valueOf)
+                        .collect(Collectors.joining(", "));
+                mmSend(player, Messages.COMMANDS_VAULT_LIST, Placeholder.parsed("vaults", vaultList));
+            }));
             return true;
         }
 
@@ -72,26 +260,40 @@ public class VaultCommand extends BaseCommand {
             return false;
         }
 
-        Vault vault = vaultManager.getVault(targetUUID, vaultNumber);
-        if (vault == null) {
-            mmSend(player, Messages.ERROR_INVALID_VAULT);
-            return false;
-        }
-
         if (!Permissions.hasVaultCount(player.getUniqueId(), vaultNumber)) {
             mmSend(player, PERMS_PV_COUNT);
             return false;
         }
+
+        vaultManager.getVaultAsync(targetUUID, vaultNumber).whenComplete((vault, error) ->
+                OtterVaults.getScheduler().runSync(() -> openVault(player, targetUUID, vaultNumber, error == null ? vault : null)));
+        return true;
+    }
+
+    /**
+     * Opens a loaded vault for the player. Must be called on the main thread.
+     */
+    private void openVault(Player player, UUID targetUUID, int vaultNumber, Vault vault) {
+        if (!player.isOnline()) return;
+
+        if (vault == null) {
+            mmSend(player, Messages.ERROR_INVALID_VAULT);
+            return;
+        }
+        // Someone else may have opened it while it was loading.
+        if (vaultManager.isVaultOpen(targetUUID, vaultNumber)) {
+            mmSend(player, Messages.ERROR_CONCURRENT_ACCESS);
+            return;
+        }
         vault.openInventory(player);
 
         if (!targetUUID.equals(player.getUniqueId())) {
             mmSend(player, Messages.COMMANDS_VAULT_OPENING_OTHER,
                     Placeholder.parsed("number", String.valueOf(vaultNumber)),
-                    Placeholder.parsed("player", Objects.requireNonNull(Bukkit.getOfflinePlayer(targetUUID).getName())));
+                    Placeholder.parsed("player", Objects.requireNonNullElse(Bukkit.getOfflinePlayer(targetUUID).getName(), targetUUID.toString())));
         } else {
             mmSend(player, Messages.COMMANDS_VAULT_OPENING_SELF, Placeholder.parsed("number", String.valueOf(vaultNumber)));
         }
-        return true;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package dev.dxnny.otterVaults.config;
+
+import io.papermc.paper.registry.RegistryAccess;
+import io.papermc.paper.registry.RegistryKey;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The item blacklist, compiled once from the config when it is loaded.
+ * Materials and enchantments are resolved up front, so matching an item
+ * is a set lookup plus a few enchantment checks, and never allocates.
+ */
+public class ItemBlacklist {
+    private final Set<Material> materials;
+    private final Enchantment[] enchantments;
+    private final int[] customModelData;
+
+    private ItemBlacklist(Set<Material> materials, Enchantment[] enchantments, int[] customModelData) {
+        this.materials = materials;
+        this.enchantments = enchantments;
+        this.customModelData = customModelData;
+    }
+
+    /**
+     * Compiles the blacklist from its config entries. Entries that don't resolve
+     * to a material or enchantment are reported once here, and otherwise ignored.
+     *
+     * @param materialNames material names, such as {@code "BEDROCK"} or {@code "minecraft:bedrock"}
+     * @param enchantmentNames enchantment keys, such as {@code "VANISHING_CURSE"} or {@code "minecraft:vanishing_curse"}
+     * @param customModelData custom model data values to blacklist
+     * @param logger the logger invalid entries are reported to
+     * @return the compiled blacklist
+     */
+    public static ItemBlacklist compile(List<String> materialNames, List<String> enchantmentNames, List<Integer> customModelData, Logger logger) {
+        Set<Material> materials = EnumSet.noneOf(Material.class);
+        for (String name : materialNames) {
+            if (name == null || name.isBlank()) continue;
+            Material material = Material.matchMaterial(name.trim());
+            if (material == null) {
+                logger.warning("Ignoring unknown material in item_blacklist.materials: " + name);
+                continue;
+            }
+            materials.add(material);
+        }
+
+        Set<Enchantment> enchantments = new LinkedHashSet<>();
+        Registry<Enchantment> enchantRegistry = RegistryAccess.registryAccess().getRegistry(RegistryKey.ENCHANTMENT);
+        for (String name : enchantmentNames) {
+            if (name == null || name.isBlank()) continue;
+            NamespacedKey key = NamespacedKey.fromString(name.trim().toLowerCase());
+            Enchantment enchantment = key == null ? null : enchantRegistry.get(key);
+            if (enchantment == null) {
+                logger.warning("Ignoring unknown enchantment in item_blacklist.enchantments: " + name);
+                continue;
+            }
+            enchantments.add(enchantment);
+        }
+
+        List<Integer> modelData = new ArrayList<>();
+        for (Integer value : customModelData) {
+            if (value != null) modelData.add(value);
+        }
+        int[] sortedModelData = modelData.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+
+        return new ItemBlacklist(materials, enchantments.toArray(new Enchantment[0]), sortedModelData);
+    }
+
+    /**
+     * Creates a blacklist that matches no items.
+     *
+     * @return an empty blacklist
+     */
+    public static ItemBlacklist empty() {
+        return new ItemBlacklist(EnumSet.noneOf(Material.class), new Enchantment[0], new int[0]);
+    }
+
+    /**
+     * Checks if the given item is blacklisted.
+     * Custom model data rules need the item's meta, so they are only evaluated when configured.
+     *
+     * @param itemStack the item to check
+     * @return {@code true} if the item matches any blacklist rule
+     */
+    public boolean matches(ItemStack itemStack) {
+        if (materials.contains(itemStack.getType())) {
+            return true;
+        }
+
+        for (Enchantment enchantment : enchantments) {
+            if (itemStack.containsEnchantment(enchantment)) return true;
+        }
+
+        if (customModelData.length > 0 && itemStack.hasItemMeta()) {
+            ItemMeta meta = itemStack.getItemMeta();
+            return meta.hasCustomModelData() && Arrays.binarySearch(customModelData, meta.getCustomModelData()) >= 0;
+        }
+
+        return false;
+    }
+
+}
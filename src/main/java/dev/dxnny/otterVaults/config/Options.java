@@ -1,6 +1,8 @@
 package dev.dxnny.otterVaults.config;
 
 import dev.dejvokep.boostedyaml.YamlDocument;
+import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.util.Compression;
 import lombok.Getter;
 
 import java.util.List;
@@ -10,20 +12,128 @@ public class Options {
     @Getter
     private static int MAX_VAULT_COUNT;
     @Getter
-    private static boolean ITEM_BLACKLIST_ENABLED;
+    private static long ALLOWANCE_CACHE_SECONDS;
     @Getter
-    private static List<String> ITEM_BLACKLIST_MATERIALS;
+    private static boolean ITEM_BLACKLIST_ENABLED;
     @Getter
-    private static List<String> ITEM_BLACKLIST_ENCHANTS;
+    private static ItemBlacklist ITEM_BLACKLIST = ItemBlacklist.empty();
     @Getter
     private static boolean DEBUG;
+    @Getter
+    private static String STORAGE_BACKEND;
+    @Getter
+    private static String STORAGE_HOST;
+    @Getter
+    private static int STORAGE_PORT;
+    @Getter
+    private static String STORAGE_DATABASE;
+    @Getter
+    private static String STORAGE_USERNAME;
+    @Getter
+    private static String STORAGE_PASSWORD;
+    @Getter
+    private static int STORAGE_POOL_SIZE;
+    @Getter
+    private static boolean STORAGE_POOL_AUTO;
+    @Getter
+    private static int STORAGE_POOL_MIN_SIZE;
+    @Getter
+    private static long STORAGE_TUNING_INTERVAL_SECONDS;
+    @Getter
+    private static int STORAGE_QUEUE_CAPACITY;
+    @Getter
+    private static int STORAGE_LOG_SEGMENT_SIZE_MB;
+    @Getter
+    private static boolean STORAGE_LOG_SYNC_WRITES;
+    @Getter
+    private static double STORAGE_LOG_COMPACTION_THRESHOLD;
+    @Getter
+    private static long STORAGE_LOG_COMPACTION_INTERVAL_SECONDS;
+    @Getter
+    private static boolean STORAGE_DELTAS_ENABLED;
+    @Getter
+    private static int STORAGE_DELTAS_SNAPSHOT_EVERY;
+    @Getter
+    private static long IDLE_RELEASE_SECONDS;
+    @Getter
+    private static long HOLDER_CACHE_MAX_MB;
+    @Getter
+    private static long HOLDER_CACHE_EXPIRE_MINUTES;
+    @Getter
+    private static long OFFHEAP_CACHE_MAX_MB;
+    @Getter
+    private static long AUTOSAVE_INTERVAL_SECONDS;
+    @Getter
+    private static double AUTOSAVE_TICK_BUDGET_MS;
+    @Getter
+    private static long SHUTDOWN_TIMEOUT_SECONDS;
+    @Getter
+    private static long PREFETCH_TIMEOUT_MS;
+    @Getter
+    private static boolean WRITE_BEHIND_ENABLED;
+    @Getter
+    private static long WRITE_BEHIND_MAX_LATENCY_MS;
+    @Getter
+    private static int WRITE_BEHIND_MAX_BATCH_SIZE;
+    @Getter
+    private static boolean MIGRATE_LEGACY_BLOBS;
+    @Getter
+    private static Compression.Codec COMPRESSION_CODEC;
+    @Getter
+    private static int COMPRESSION_LEVEL;
+    @Getter
+    private static boolean COMPRESSION_USE_DICTIONARY;
+    @Getter
+    private static boolean METRICS_PROMETHEUS_FILE;
+    @Getter
+    private static long METRICS_INTERVAL_SECONDS;
 
     public static void loadOptions(YamlDocument config) {
         MAX_VAULT_COUNT = config.getInt("max_vault_count", 20);
+        ALLOWANCE_CACHE_SECONDS = config.getLong("allowance_cache_seconds", 60L);
         ITEM_BLACKLIST_ENABLED = config.getBoolean("item_blacklist.enabled", false);
-        ITEM_BLACKLIST_MATERIALS = config.getStringList("item_blacklist.materials", List.of("AIR"));
-        ITEM_BLACKLIST_ENCHANTS = config.getStringList("item_blacklist.enchantments", List.of(""));
+        ITEM_BLACKLIST = !ITEM_BLACKLIST_ENABLED ? ItemBlacklist.empty() : ItemBlacklist.compile(
+                config.getStringList("item_blacklist.materials", List.of("AIR")),
+                config.getStringList("item_blacklist.enchantments", List.of()),
+                config.getIntList("item_blacklist.custom_model_data", List.of()),
+                OtterVaults.INSTANCE().getLogger()
+        );
         DEBUG = config.getBoolean("debug", false);
+        STORAGE_BACKEND = config.getString("storage.backend", "h2");
+        STORAGE_HOST = config.getString("storage.database.host", "localhost");
+        STORAGE_PORT = config.getInt("storage.database.port", 3306);
+        STORAGE_DATABASE = config.getString("storage.database.name", "ottervaults");
+        STORAGE_USERNAME = config.getString("storage.database.username", "root");
+        STORAGE_PASSWORD = config.getString("storage.database.password", "");
+        String poolSize = config.getString("storage.pool_size", "auto");
+        STORAGE_POOL_AUTO = poolSize.equalsIgnoreCase("auto");
+        STORAGE_POOL_SIZE = STORAGE_POOL_AUTO ? config.getInt("storage.tuning.max_pool_size", 20) : config.getInt("storage.pool_size", 20);
+        STORAGE_POOL_MIN_SIZE = config.getInt("storage.tuning.min_pool_size", 2);
+        STORAGE_TUNING_INTERVAL_SECONDS = config.getLong("storage.tuning.interval_seconds", 10L);
+        STORAGE_QUEUE_CAPACITY = config.getInt("storage.queue_capacity", 1000);
+        STORAGE_LOG_SEGMENT_SIZE_MB = config.getInt("storage.log.segment_size_mb", 64);
+        STORAGE_LOG_SYNC_WRITES = config.getBoolean("storage.log.sync_writes", true);
+        STORAGE_LOG_COMPACTION_THRESHOLD = config.getDouble("storage.log.compaction_threshold", 0.5);
+        STORAGE_LOG_COMPACTION_INTERVAL_SECONDS = config.getLong("storage.log.compaction_interval_seconds", 300L);
+        STORAGE_DELTAS_ENABLED = config.getBoolean("storage.deltas.enabled", false);
+        STORAGE_DELTAS_SNAPSHOT_EVERY = Math.max(1, config.getInt("storage.deltas.snapshot_every", 16));
+        IDLE_RELEASE_SECONDS = config.getLong("storage.idle_release_seconds", 300L);
+        HOLDER_CACHE_MAX_MB = config.getLong("storage.holder_cache.max_megabytes", 64L);
+        HOLDER_CACHE_EXPIRE_MINUTES = config.getLong("storage.holder_cache.expire_minutes", 10L);
+        OFFHEAP_CACHE_MAX_MB = config.getLong("storage.offheap_cache.max_megabytes", 0L);
+        AUTOSAVE_INTERVAL_SECONDS = config.getLong("storage.autosave.interval_seconds", 300L);
+        AUTOSAVE_TICK_BUDGET_MS = config.getDouble("storage.autosave.tick_budget_ms", 2.0);
+        SHUTDOWN_TIMEOUT_SECONDS = config.getLong("storage.shutdown_timeout_seconds", 30L);
+        PREFETCH_TIMEOUT_MS = config.getLong("storage.prefetch_timeout_ms", 1000L);
+        WRITE_BEHIND_ENABLED = config.getBoolean("storage.write_behind.enabled", true);
+        WRITE_BEHIND_MAX_LATENCY_MS = config.getLong("storage.write_behind.max_latency_ms", 500L);
+        WRITE_BEHIND_MAX_BATCH_SIZE = config.getInt("storage.write_behind.max_batch_size", 100);
+        MIGRATE_LEGACY_BLOBS = config.getBoolean("storage.migrate_legacy_blobs", true);
+        COMPRESSION_CODEC = Compression.Codec.fromName(config.getString("storage.compression.codec", "none"));
+        COMPRESSION_LEVEL = config.getInt("storage.compression.level", 6);
+        COMPRESSION_USE_DICTIONARY = config.getBoolean("storage.compression.use_dictionary", false);
+        METRICS_PROMETHEUS_FILE = config.getBoolean("metrics.prometheus_file", false);
+        METRICS_INTERVAL_SECONDS = config.getLong("metrics.interval_seconds", 60L);
     }
 
 }
@@ -30,6 +30,8 @@ public enum Messages {
     ERROR_INVALID_PLAYER("error.invalid.player"),
     ERROR_INVALID_NUMBER("error.invalid.number"),
     ERROR_INVALID_VAULT("error.invalid.vault"),
+    ERROR_INVALID_MATERIAL("error.invalid.material"),
+    ERROR_INVALID_ENCHANTMENT("error.invalid.enchantment"),
     ERROR_BLACKLISTED_ITEM("error.blacklisted_item"),
 
     PERMS_INSUFFICIENT("permissions.insufficient"),
@@ -37,7 +39,19 @@ public enum Messages {
 
     COMMANDS_VAULT_LIST("commands.vault.list"),
     COMMANDS_VAULT_OPENING_SELF("commands.vault.opening.self"),
-    COMMANDS_VAULT_OPENING_OTHER("commands.vault.opening.other");
+    COMMANDS_VAULT_OPENING_OTHER("commands.vault.opening.other"),
+
+    COMMANDS_ADMIN_COMPRESSION_REPORT("commands.admin.compression.report"),
+    COMMANDS_ADMIN_COMPRESSION_TRAINING("commands.admin.compression.training"),
+    COMMANDS_ADMIN_COMPRESSION_TRAINED("commands.admin.compression.trained"),
+    COMMANDS_ADMIN_COMPRESSION_TRAIN_FAILED("commands.admin.compression.train_failed"),
+    COMMANDS_ADMIN_STATS("commands.admin.stats"),
+    COMMANDS_ADMIN_SEARCH_HEADER("commands.admin.search.header"),
+    COMMANDS_ADMIN_SEARCH_ENTRY("commands.admin.search.entry"),
+    COMMANDS_ADMIN_SEARCH_NONE("commands.admin.search.none"),
+    COMMANDS_ADMIN_SEARCH_MORE("commands.admin.search.more"),
+    COMMANDS_ADMIN_SEARCH_INCOMPLETE("commands.admin.search.incomplete"),
+    COMMANDS_ADMIN_SEARCH_UNAVAILABLE("commands.admin.search.unavailable");
 
     private final String path;
 
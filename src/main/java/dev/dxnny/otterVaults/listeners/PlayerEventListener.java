@@ -3,26 +3,23 @@ package dev.dxnny.otterVaults.listeners;
 import dev.dxnny.otterVaults.config.Options;
 import dev.dxnny.otterVaults.lang.Messages;
 import dev.dxnny.otterVaults.managers.Vault;
+import dev.dxnny.otterVaults.managers.VaultInventoryHolder;
 import dev.dxnny.otterVaults.managers.VaultManager;
 import dev.dxnny.otterVaults.util.Permissions;
-import io.papermc.paper.registry.RegistryAccess;
-import io.papermc.paper.registry.RegistryKey;
-import org.bukkit.NamespacedKey;
-import org.bukkit.Registry;
-import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.ClickType;
+import org.bukkit.event.inventory.InventoryAction;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
-import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.List;
-
-import static dev.dxnny.otterVaults.OtterVaults.DATABASE;
+import static dev.dxnny.otterVaults.OtterVaults.STORAGE;
 import static dev.dxnny.otterVaults.lang.Messages.mmSend;
 import static dev.dxnny.otterVaults.util.Permissions.hasPerm;
 
@@ -35,35 +32,63 @@ public class PlayerEventListener implements Listener {
     
     @EventHandler(ignoreCancelled = true, priority = EventPriority.LOWEST)
     public void onInventoryClose(InventoryCloseEvent event) {
-        Vault vault = vaultManager.getActiveVaults().values().stream()
-                .filter(loopVault -> loopVault.getInventory().equals(event.getInventory()))
-                .findFirst()
-                .orElse(null);
+        Vault vault = VaultInventoryHolder.vaultOf(event.getInventory());
 
         if (vault != null) {
             vaultManager.deactivateVault(vault);
-            DATABASE().saveVaultAsync(vault);
+            STORAGE().saveVaultAsync(vault);
             vault.unlock();
         }
     }
 
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onVaultClick(InventoryClickEvent event) {
+        if (event.getAction() == InventoryAction.NOTHING) return;
+
+        Inventory top = event.getView().getTopInventory();
+        Vault vault = VaultInventoryHolder.vaultOf(top);
+        if (vault == null) return;
+
+        // Clicks in the player's own inventory only touch the vault when items are moved across.
+        boolean topClicked = event.getRawSlot() >= 0 && event.getRawSlot() < top.getSize();
+        InventoryAction action = event.getAction();
+        // Moves across and double-click collects can touch any vault slot.
+        if (action == InventoryAction.MOVE_TO_OTHER_INVENTORY && !topClicked || action == InventoryAction.COLLECT_TO_CURSOR) {
+            vault.markDirty();
+        } else if (topClicked) {
+            vault.markDirty(event.getRawSlot());
+        }
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onVaultDrag(InventoryDragEvent event) {
+        Inventory top = event.getView().getTopInventory();
+        Vault vault = VaultInventoryHolder.vaultOf(top);
+        if (vault == null) return;
+
+        for (int rawSlot : event.getRawSlots()) {
+            if (rawSlot < top.getSize()) {
+                vault.markDirty(rawSlot);
+            }
+        }
+    }
+
+    // Fires for every item a hopper moves, so non-vault inventories are rejected by size before any holder lookup.
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onVaultMoveItem(InventoryMoveItemEvent event) {
+        Vault source = VaultInventoryHolder.vaultOf(event.getSource());
+        if (source != null) source.markDirty();
+
+        Vault destination = VaultInventoryHolder.vaultOf(event.getDestination());
+        if (destination != null) destination.markDirty();
+    }
+
     @EventHandler
     public void onClick(InventoryClickEvent event) {
         if (!Options.isITEM_BLACKLIST_ENABLED()) return;
 
         if (!(event.getWhoClicked() instanceof Player player)) return;
-        boolean vaultEvent = false;
-
-        for (Vault vault : vaultManager.getActiveVaultsForPlayer(player.getUniqueId())) {
-            InventoryHolder eventHolder = event.getInventory().getHolder();
-            InventoryHolder vaultHolder = vault.getInventory().getHolder();
-
-            if (eventHolder == vaultHolder || eventHolder == player) {
-                vaultEvent = true;
-                break;
-            }
-        }
-        if (!vaultEvent) return;
+        if (!(event.getView().getTopInventory().getHolder(false) instanceof VaultInventoryHolder)) return;
 
         if (hasPerm(player, Permissions.BYPASS_BLACKLIST)) return;
 
@@ -80,24 +105,7 @@ public class PlayerEventListener implements Listener {
     }
 
     private boolean isBlacklistedItem(ItemStack itemStack) {
-        List<String> materialBlacklist = Options.getITEM_BLACKLIST_MATERIALS();
-        List<String> enchantBlacklist = Options.getITEM_BLACKLIST_ENCHANTS();
-
-        if (materialBlacklist.contains(itemStack.getType().toString())) {
-            return true;
-        }
-
-        if (!enchantBlacklist.isEmpty()){
-            Registry<Enchantment> enchantRegistry = RegistryAccess.registryAccess().getRegistry(RegistryKey.ENCHANTMENT);
-            for (String enchant : enchantBlacklist) {
-                Enchantment enchantKey = enchantRegistry.get(NamespacedKey.minecraft(enchant.toLowerCase()));
-
-                if (enchantKey == null) continue;
-                if (itemStack.containsEnchantment(enchantKey)) return true;
-            }
-        }
-
-        return false;
+        return Options.getITEM_BLACKLIST().matches(itemStack);
     }
 
-}
\ No newline at end of file
+}
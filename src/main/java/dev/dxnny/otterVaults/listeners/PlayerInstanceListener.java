@@ -1,68 +1,104 @@
 package dev.dxnny.otterVaults.listeners;
 
 import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.config.Options;
 import dev.dxnny.otterVaults.managers.Vault;
 import dev.dxnny.otterVaults.managers.VaultHolder;
 import dev.dxnny.otterVaults.managers.VaultManager;
-import dev.dxnny.otterVaults.storage.VaultDatabase;
+import dev.dxnny.otterVaults.metrics.VaultMetrics;
 import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerCommandSendEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
-import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class PlayerInstanceListener implements Listener {
     private final VaultManager vaultManager;
-    private final VaultDatabase database;
 
-    public PlayerInstanceListener(VaultManager vaultManager, VaultDatabase database) {
+    public PlayerInstanceListener(VaultManager vaultManager) {
         this.vaultManager = vaultManager;
-        this.database = database;
 
+        // Players already online when the plugin is (re)loaded never went through the login events.
+        vaultManager.warmVaultHolders(Bukkit.getOnlinePlayers().stream().map(Player::getUniqueId).toList());
+    }
 
-        Bukkit.getOnlinePlayers().forEach(player -> {
-            UUID uuid = player.getUniqueId();
-
-            OtterVaults.getTaskLimiter().submitTask(() -> {
-                AtomicReference<VaultHolder> holder = new AtomicReference<>();
-                OtterVaults.getScheduler().runAsync(() -> holder.set(database.loadVaultHolder(uuid)));
+    /**
+     * Loads the player's {@link VaultHolder} while they log in. The event is called off the
+     * main thread, so the login can wait a bounded time for the holder to be published.
+     *
+     * @param event the AsyncPlayerPreLoginEvent triggered when a player starts logging in
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        vaultManager.prefetchVaultHolder(event.getUniqueId(), Options.getPREFETCH_TIMEOUT_MS());
+    }
 
-                // If the holder exists, we need to update the cache on the main thread.
-                if (holder.get() != null) {
-                    OtterVaults.getScheduler().runSync(() -> vaultManager.getHolders().put(uuid, holder.get()));
-                }
-            });
-        });
+    /**
+     * Unloads the holder prefetched for a player whose login was denied after the pre-login.
+     *
+     * @param event the PlayerLoginEvent triggered when a player logs in
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        // A denied second login must not unload the holder of the session already online.
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED && Bukkit.getPlayer(uuid) == null) {
+            vaultManager.unloadVaultHolder(uuid);
+        }
     }
 
     /**
-     * Loads the player's {@link VaultHolder} upon joining the server.
+     * Makes sure the player's {@link VaultHolder} is loaded upon joining the server.
+     * It normally already is from the pre-login; if that load is still running, it is waited
+     * for in the background.
      *
      * @param event the PlayerJoinEvent triggered when a player joins the server
      */
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        UUID uuid = event.getPlayer().getUniqueId();
+        Player player = event.getPlayer();
+        UUID uuid = player.getUniqueId();
 
-        // Load from the database asynchronously
-        OtterVaults.getTaskLimiter().submitTask(() -> {
-            AtomicReference<VaultHolder> holder = new AtomicReference<>();
-            OtterVaults.getScheduler().runAsync(() -> holder.set(database.loadVaultHolder(uuid)));
+        boolean prefetched = vaultManager.getHolders().containsKey(uuid);
+        VaultMetrics.recordPrefetch(prefetched);
+        if (prefetched) {
+            // Calculate the allowance up front, so the first command doesn't have to.
+            vaultManager.getVaultAllowance(player);
+            return;
+        }
 
-            // If the holder exists, we need to update the cache on the main thread.
-            if (holder.get() != null) {
-                OtterVaults.getScheduler().runSync(() -> vaultManager.getHolders().put(uuid, holder.get()));
+        vaultManager.pinVaultHolderAsync(uuid).thenAccept(holder -> OtterVaults.getScheduler().runSync(() -> {
+            if (player.isOnline()) {
+                vaultManager.getVaultAllowance(player);
+            } else {
+                // They left before it finished loading, and the quit had nothing to unload.
+                vaultManager.unloadVaultHolder(uuid);
             }
-        });
+        }));
+    }
+
+    /**
+     * Discards the player's cached vault allowance whenever their command list is re-sent,
+     * which permission plugins trigger after recalculating a player's permissions.
+     *
+     * @param event the PlayerCommandSendEvent triggered when commands are sent to a player
+     */
+    @EventHandler
+    public void onCommandSend(PlayerCommandSendEvent event) {
+        vaultManager.invalidateVaultAllowance(event.getPlayer().getUniqueId());
     }
 
     /**
-     * Unlocks and unloads all active vaults associated whenever a player leaves
-     * the server.
+     * Unlocks the vault a player is viewing, and unloads their vaults
+     * whenever they leave the server.
      *
      * @param event the PlayerQuitEvent triggered when a player leaves the server.
      */
@@ -70,8 +106,10 @@ public class PlayerInstanceListener implements Listener {
     public void onPlayerQuit(PlayerQuitEvent event) {
         UUID uuid = event.getPlayer().getUniqueId();
 
-        List<Vault> activeVaults = vaultManager.getActiveVaultsForPlayer(uuid);
-        activeVaults.forEach(vaultManager::unlockVault);
+        Vault viewedVault = vaultManager.getActiveVaultForViewer(uuid);
+        if (viewedVault != null) {
+            vaultManager.unlockVault(viewedVault);
+        }
 
         vaultManager.unloadVaultHolder(uuid);
     }
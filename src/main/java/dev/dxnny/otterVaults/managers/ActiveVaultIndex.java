@@ -0,0 +1,118 @@
+package dev.dxnny.otterVaults.managers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexes the currently open vaults by owner and by viewer.
+ * Each owner maps to an immutable list of their open vaults that is replaced on every change,
+ * so lookups by owner, by viewer and by (owner, number) are constant time and never allocate.
+ * An owner rarely has more than one or two vaults open, so scanning their list is effectively O(1).
+ */
+public class ActiveVaultIndex {
+    private final ConcurrentHashMap<UUID, List<Vault>> byOwner = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Vault> byViewer = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the specified vault to the index, as viewed by the specified player.
+     *
+     * @param vault the vault being opened
+     * @param viewerUUID the UUID of the player viewing the vault
+     */
+    public void add(Vault vault, UUID viewerUUID) {
+        byOwner.compute(vault.getOwnerUUID(), (owner, vaults) -> {
+            if (vaults == null) return List.of(vault);
+            if (vaults.contains(vault)) return vaults;
+
+            List<Vault> updated = new ArrayList<>(vaults.size() + 1);
+            updated.addAll(vaults);
+            updated.add(vault);
+            return Collections.unmodifiableList(updated);
+        });
+
+        UUID previousViewer = vault.getViewerUUID();
+        if (previousViewer != null && !previousViewer.equals(viewerUUID)) {
+            byViewer.remove(previousViewer, vault);
+        }
+        vault.setViewerUUID(viewerUUID);
+        byViewer.put(viewerUUID, vault);
+    }
+
+    /**
+     * Removes the specified vault from the index.
+     *
+     * @param vault the vault being closed
+     */
+    public void remove(Vault vault) {
+        byOwner.computeIfPresent(vault.getOwnerUUID(), (owner, vaults) -> {
+            if (!vaults.contains(vault)) return vaults;
+            if (vaults.size() == 1) return null;
+
+            List<Vault> updated = new ArrayList<>(vaults);
+            updated.remove(vault);
+            return Collections.unmodifiableList(updated);
+        });
+
+        UUID viewerUUID = vault.getViewerUUID();
+        if (viewerUUID != null) {
+            byViewer.remove(viewerUUID, vault);
+            vault.setViewerUUID(null);
+        }
+    }
+
+    /**
+     * Retrieves the open vault with the specified owner and number.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @param vaultNumber the number identifying the specific vault
+     * @return the open {@code Vault}, or {@code null} if it is not open
+     */
+    public Vault get(UUID ownerUUID, int vaultNumber) {
+        List<Vault> vaults = byOwner.get(ownerUUID);
+        if (vaults == null) return null;
+
+        for (int i = 0; i < vaults.size(); i++) {
+            Vault vault = vaults.get(i);
+            if (vault.getVaultNumber() == vaultNumber) return vault;
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the open vaults owned by the specified player.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @return an unmodifiable list of the owner's open vaults; empty if none are open
+     */
+    public List<Vault> getByOwner(UUID ownerUUID) {
+        return byOwner.getOrDefault(ownerUUID, List.of());
+    }
+
+    /**
+     * Retrieves the vault the specified player is viewing.
+     *
+     * @param viewerUUID the UUID of the viewing player
+     * @return the {@code Vault} being viewed, or {@code null} if the player isn't viewing a vault
+     */
+    public Vault getByViewer(UUID viewerUUID) {
+        return byViewer.get(viewerUUID);
+    }
+
+    /**
+     * Retrieves every open vault.
+     *
+     * @return a live view of all open vaults
+     */
+    public Collection<Vault> values() {
+        return byViewer.values();
+    }
+
+    public int size() {
+        return byViewer.size();
+    }
+
+}
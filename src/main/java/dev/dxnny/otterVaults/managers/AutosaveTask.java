@@ -0,0 +1,73 @@
+package dev.dxnny.otterVaults.managers;
+
+import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.storage.VaultStorage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checkpoints vaults with unsaved modifications, so that vaults left open for a
+ * long time aren't lost on a crash. Runs every tick on the main thread: each checkpoint
+ * round serializes as many vaults as fit in the per-tick time budget, and hands each tick's
+ * vaults to the storage executor as a single batch.
+ */
+public class AutosaveTask implements Runnable {
+    private final VaultManager vaultManager;
+    private final VaultStorage storage;
+    private final long intervalNanos;
+    private final long tickBudgetNanos;
+    // The vaults left to checkpoint in the current round.
+    private final ArrayDeque<Vault> queue = new ArrayDeque<>();
+    private long nextRound;
+    private int roundTicks;
+    private int roundCheckpoints;
+
+    /**
+     * @param vaultManager the manager holding the loaded vaults
+     * @param storage the storage checkpoints are written to
+     * @param intervalSeconds the time between the starts of two rounds, in seconds
+     * @param tickBudgetMillis the main-thread time a round may take per tick, in milliseconds
+     */
+    public AutosaveTask(VaultManager vaultManager, VaultStorage storage, long intervalSeconds, double tickBudgetMillis) {
+        this.vaultManager = vaultManager;
+        this.storage = storage;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        this.tickBudgetNanos = (long) (tickBudgetMillis * 1_000_000);
+        this.nextRound = System.nanoTime() + intervalNanos;
+    }
+
+    @Override
+    public void run() {
+        long startTime = System.nanoTime();
+        if (queue.isEmpty()) {
+            if (startTime - nextRound < 0) return;
+
+            nextRound = startTime + intervalNanos;
+            queue.addAll(vaultManager.getDirtyVaults());
+            roundTicks = 0;
+            roundCheckpoints = 0;
+            if (queue.isEmpty()) return;
+        }
+
+        roundTicks++;
+        List<VaultStorage.Checkpoint> batch = new ArrayList<>();
+        // At least one vault is checkpointed per tick, so a round always ends.
+        do {
+            // Vaults saved on close since the round started are clean by now, and are skipped.
+            VaultStorage.Checkpoint checkpoint = storage.checkpointVault(queue.poll());
+            if (checkpoint != null) batch.add(checkpoint);
+        } while (!queue.isEmpty() && System.nanoTime() - startTime < tickBudgetNanos);
+
+        if (!batch.isEmpty()) {
+            roundCheckpoints += batch.size();
+            storage.saveCheckpointsAsync(batch);
+        }
+        if (queue.isEmpty() && roundCheckpoints > 0) {
+            OtterVaults.debug("Checkpointed " + roundCheckpoints + " vaults over " + roundTicks + " ticks.");
+        }
+    }
+
+}
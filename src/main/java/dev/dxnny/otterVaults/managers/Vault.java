@@ -1,8 +1,13 @@
 package dev.dxnny.otterVaults.managers;
 
 import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.config.Options;
 import dev.dxnny.otterVaults.lang.Messages;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.Serializers;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
@@ -10,35 +15,68 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 
 import static dev.dxnny.otterVaults.lang.Messages.mmSend;
 import static dev.dxnny.otterVaults.lang.Messages.vaultTitle;
 
 
 public class Vault {
+    public static final int SIZE = 54;
+    // Rough in-memory sizes, in bytes, used to weigh cached vaults: the vault with its
+    // slot versions, a decoded inventory, and each item in it.
+    private static final int BASE_WEIGHT = 128 + SIZE * Long.BYTES;
+    private static final int INVENTORY_WEIGHT = 1024;
+    private static final int ITEM_WEIGHT = 256;
+
     @Getter
     private final UUID ownerUUID;
     @Getter
     private final int vaultNumber;
-    @Getter
+    // Decoded from storedData the first time the vault is opened, and dropped again once idle.
     private Inventory inventory;
+    // The bytes last loaded from or written to storage, possibly compressed; null if never stored.
+    private byte[] storedData;
+    // The items in the inventory when it was last decoded or saved, so the cache can weigh the
+    // vault on any thread without reading the live inventory.
+    private int itemCount;
+    private long lastAccess = System.currentTimeMillis();
     @Getter
-    private final boolean initiallyEmpty;
+    private boolean initiallyEmpty;
     private final ReentrantLock lock = new ReentrantLock();
+    // Held while the vault is written to storage, so that writes of it land one at a time.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // The player currently viewing the vault, maintained by ActiveVaultIndex.
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private volatile UUID viewerUUID;
+
+    // Bumped by inventory events; the vault is dirty while it differs from persistedVersion.
+    private final AtomicLong modificationVersion = new AtomicLong();
+    private long persistedVersion;
+    private Serializers.ContentHash persistedHash;
+    // The modification version each slot was last changed at, and the last version every slot
+    // may have changed at. Lets a save serialize only the slots changed since persistedVersion.
+    private final AtomicLongArray slotVersions = new AtomicLongArray(SIZE);
+    private final AtomicLong allSlotsVersion = new AtomicLong();
+    // The serialized item of each slot as last persisted, kept for slot deltas; null if unknown.
+    private byte[][] persistedSlots;
 
     /**
-     * Constructs a Vault instance with the specified owner, vault number, and inventory.
+     * Constructs a Vault instance with the specified owner, vault number, and stored bytes.
+     * The bytes are only decoded into an inventory the first time it is needed.
      *
      * @param ownerUUID the uuid of the owner of the vault
      * @param vaultNumber the number identifying the specific vault
-     * @param vaultInventory the inventory associated with the vault
+     * @param storedData the bytes the vault is stored as, possibly compressed
      */
-    public Vault(UUID ownerUUID, int vaultNumber, Inventory vaultInventory) {
+    public Vault(UUID ownerUUID, int vaultNumber, byte[] storedData) {
         this.ownerUUID = ownerUUID;
         this.vaultNumber = vaultNumber;
-        this.inventory = vaultInventory;
-        this.initiallyEmpty = isInventoryEmpty(vaultInventory);
+        this.storedData = storedData;
     }
 
     /**
@@ -50,10 +88,125 @@ public class Vault {
     public Vault(UUID ownerUUID, int vaultNumber) {
         this.ownerUUID = ownerUUID;
         this.vaultNumber = vaultNumber;
-        this.inventory = Bukkit.createInventory(Bukkit.getPlayer(ownerUUID), 54, vaultTitle(vaultNumber));
         this.initiallyEmpty = true;
     }
 
+    /**
+     * Retrieves the vault's inventory, decoding it from the stored bytes if it isn't already.
+     *
+     * @return the vault's inventory
+     */
+    public synchronized Inventory getInventory() {
+        lastAccess = System.currentTimeMillis();
+        if (inventory != null) return inventory;
+
+        inventory = createInventory();
+        if (storedData == null) {
+            initiallyEmpty = true;
+            return inventory;
+        }
+
+        try {
+            byte[] raw = Compression.decompress(storedData);
+            ItemStack[] contents = Serializers.deserializeInv(raw);
+            if (contents != null) {
+                inventory.setContents(contents);
+                itemCount = countItems(contents);
+            }
+            persistedHash = Serializers.contentHash(raw);
+            if (Options.isSTORAGE_DELTAS_ENABLED() && !Serializers.isLegacy(raw)) {
+                persistedSlots = Serializers.unpack(raw);
+            }
+        } catch (IllegalArgumentException e) {
+            OtterVaults.INSTANCE().getLogger().log(Level.SEVERE, "Error while decoding vault " + vaultNumber + " for " + ownerUUID, e);
+        }
+        initiallyEmpty = isInventoryEmpty(inventory);
+        return inventory;
+    }
+
+    /**
+     * Determines if the vault's inventory is currently decoded in memory.
+     *
+     * @return {@code true} if the inventory is decoded, {@code false} if only the stored bytes are held
+     */
+    public synchronized boolean isDecoded() {
+        return inventory != null;
+    }
+
+    /**
+     * Retrieves the bytes the vault was last loaded from or written as.
+     *
+     * @return the stored bytes, possibly compressed, or {@code null} if the vault was never stored
+     */
+    public synchronized byte[] getStoredData() {
+        return storedData;
+    }
+
+    /**
+     * Estimates how much memory the vault takes up: its stored bytes, and its decoded
+     * inventory and persisted slots while it is decoded. Items are counted as of the last
+     * decode or save, so this is safe to call on any thread.
+     *
+     * @return the estimated size of the vault, in bytes
+     */
+    public synchronized int estimateWeight() {
+        int weight = BASE_WEIGHT + (storedData == null ? 0 : storedData.length);
+        if (inventory != null) {
+            weight += INVENTORY_WEIGHT + itemCount * ITEM_WEIGHT;
+        }
+        if (persistedSlots != null) {
+            for (byte[] slot : persistedSlots) {
+                if (slot != null) weight += slot.length;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Records how many items the vault holds, for {@link #estimateWeight()}.
+     * Called with the contents being saved, which were read on the main thread.
+     *
+     * @param contents the vault's contents
+     */
+    public synchronized void cacheItemCount(ItemStack[] contents) {
+        itemCount = countItems(contents);
+    }
+
+    private static int countItems(ItemStack[] contents) {
+        int count = 0;
+        for (ItemStack item : contents) {
+            if (item != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Drops the decoded inventory, keeping only the stored bytes, if the vault
+     * has no unsaved modifications, no viewers, and hasn't been accessed for a while.
+     * Must be called on the main thread.
+     *
+     * @param idleMillis how long the vault must have been unused, in milliseconds
+     * @return {@code true} if the inventory was dropped
+     */
+    public synchronized boolean releaseIfIdle(long idleMillis) {
+        if (inventory == null || viewerUUID != null || isDirty()) return false;
+        if (System.currentTimeMillis() - lastAccess < idleMillis) return false;
+        if (!inventory.getViewers().isEmpty()) return false;
+
+        inventory = null;
+        persistedSlots = null;
+        return true;
+    }
+
+    /**
+     * Creates an empty vault inventory, held by a {@link VaultInventoryHolder} pointing back to this vault.
+     *
+     * @return the new inventory
+     */
+    private Inventory createInventory() {
+        return Bukkit.createInventory(new VaultInventoryHolder(this), SIZE, vaultTitle(vaultNumber));
+    }
+
     /**
      * Attempts to acquire the lock for the vault.
      * If the lock is available, it will be acquired by the current thread.
@@ -73,6 +226,123 @@ public class Vault {
         }
     }
 
+    /**
+     * Blocks until no other write of the vault to storage is in progress, and holds off any
+     * other write until {@link #unlockWrites()}. Called on a storage thread around each write.
+     */
+    public void lockWrites() {
+        writeLock.lock();
+    }
+
+    /**
+     * Releases the hold taken by {@link #lockWrites()}.
+     */
+    public void unlockWrites() {
+        writeLock.unlock();
+    }
+
+    /**
+     * Marks the vault as modified, so that the next save will persist it.
+     * Called on the main thread from inventory events that may touch any slot.
+     */
+    public void markDirty() {
+        // The slot version is published first, so a save that sees the new version sees it too.
+        allSlotsVersion.set(modificationVersion.get() + 1);
+        modificationVersion.incrementAndGet();
+    }
+
+    /**
+     * Marks a single slot of the vault as modified, so that the next save will persist it.
+     * Called on the main thread from inventory click and drag events.
+     *
+     * @param slot the modified slot
+     */
+    public void markDirty(int slot) {
+        slotVersions.set(slot, modificationVersion.get() + 1);
+        modificationVersion.incrementAndGet();
+    }
+
+    /**
+     * Determines if a slot may have been modified after the given version.
+     *
+     * @param slot the slot to check
+     * @param version a modification version, usually that of {@link #getPersistedSlots()}
+     * @return {@code true} if the slot has to be serialized again
+     */
+    public boolean isSlotModifiedSince(int slot, long version) {
+        return Math.max(slotVersions.get(slot), allSlotsVersion.get()) > version;
+    }
+
+    /**
+     * Retrieves the serialized item of each slot as last persisted, along with the version
+     * they were persisted at. Only kept while slot deltas are enabled and the vault is decoded.
+     *
+     * @return the persisted slots, or {@code null} if they aren't known
+     */
+    public synchronized PersistedSlots getPersistedSlots() {
+        return persistedSlots == null ? null : new PersistedSlots(persistedVersion, persistedSlots);
+    }
+
+    /**
+     * Retrieves the current modification version of the vault.
+     * Capture this before serializing, and pass it to {@link #markPersisted(long, Serializers.ContentHash, byte[], byte[][])} afterwards.
+     *
+     * @return the current modification version
+     */
+    public long getVersion() {
+        return modificationVersion.get();
+    }
+
+    /**
+     * Retrieves the modification version the vault was last persisted at.
+     *
+     * @return the persisted version
+     */
+    public synchronized long getPersistedVersion() {
+        return persistedVersion;
+    }
+
+    /**
+     * Determines if the vault has been modified since it was last loaded or persisted.
+     *
+     * @return {@code true} if the vault has unsaved modifications, {@code false} otherwise
+     */
+    public synchronized boolean isDirty() {
+        return modificationVersion.get() != persistedVersion;
+    }
+
+    /**
+     * Checks if the given content hash matches the hash of the last persisted bytes.
+     *
+     * @param hash the content hash of freshly serialized bytes
+     * @return {@code true} if the bytes are identical to what is already stored
+     */
+    public synchronized boolean matchesPersisted(Serializers.ContentHash hash) {
+        return hash != null && hash.equals(persistedHash);
+    }
+
+    /**
+     * Records that the vault's contents at the given version have been persisted.
+     * Versions older than the last persisted version are ignored, so out-of-order
+     * saves can never mark newer modifications as clean.
+     *
+     * @param version the modification version captured before serialization
+     * @param hash the content hash of the persisted (uncompressed) bytes
+     * @param storedData the bytes as written to storage; {@code null} keeps the current stored bytes
+     * @param slots the serialized item of each slot as persisted; {@code null} keeps the current slots
+     */
+    public synchronized void markPersisted(long version, Serializers.ContentHash hash, byte[] storedData, byte[][] slots) {
+        if (version < persistedVersion) return;
+        this.persistedVersion = version;
+        this.persistedHash = hash;
+        if (storedData != null) {
+            this.storedData = storedData;
+        }
+        if (slots != null) {
+            this.persistedSlots = slots;
+        }
+    }
+
     /**
      * Opens the vault inventory for the specified player.
      *
@@ -85,10 +355,11 @@ public class Vault {
             return;
         }
 
-        vaultManager.activateVault(this);
+        vaultManager.activateVault(this, player.getUniqueId());
         OtterVaults.getScheduler().runSync(() -> {
-            getInventory().close();
-            player.openInventory(inventory);
+            Inventory vaultInventory = getInventory();
+            vaultInventory.close();
+            player.openInventory(vaultInventory);
         });
     }
 
@@ -113,7 +384,14 @@ public class Vault {
      * @return {@code true} if the inventory is empty, {@code false} otherwise
      */
     public boolean isEmpty() {
-        return isInventoryEmpty(this.inventory);
+        return isInventoryEmpty(getInventory());
+    }
+
+    /**
+     * The serialized item of each slot of a vault as persisted at a modification version,
+     * with {@code null} for empty slots. Never modified once created.
+     */
+    public record PersistedSlots(long version, byte[][] slots) {
     }
 
 }
\ No newline at end of file
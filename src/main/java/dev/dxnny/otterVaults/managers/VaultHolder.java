@@ -1,5 +1,6 @@
 package dev.dxnny.otterVaults.managers;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.util.ArrayList;
@@ -10,8 +11,18 @@ import java.util.concurrent.ConcurrentHashMap;
 
 @Getter
 public class VaultHolder {
+    // The rough in-memory size of a holder without its vaults, in bytes.
+    private static final int BASE_WEIGHT = 256;
+
     private final UUID ownerUUID;
     private final Map<Integer, Vault> vaults = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private volatile int vaultAllowance = -1;
+    @Getter(AccessLevel.NONE)
+    private volatile long vaultAllowanceExpiresAt;
+    // Whether every stored vault of the owner has been loaded, rather than only those opened so far.
+    @Getter(AccessLevel.NONE)
+    private volatile boolean complete;
 
     /**
      * Constructs a VaultHolder instance for a specified owner.
@@ -32,6 +43,18 @@ public class VaultHolder {
         vaults.put(vaultNumber, vault);
     }
 
+    /**
+     * Adds a vault to the VaultHolder's collection, unless one with the same number is already present.
+     *
+     * @param vaultNumber the number of the vault
+     * @param vault the Vault instance to add
+     * @return the vault now associated with the vault number, which is the existing one if there was one
+     */
+    public Vault addVaultIfAbsent(int vaultNumber, Vault vault) {
+        Vault existing = vaults.putIfAbsent(vaultNumber, vault);
+        return existing != null ? existing : vault;
+    }
+
     /**
      * Retrieves the Vault associated with the specified vault number.
      *
@@ -43,6 +66,80 @@ public class VaultHolder {
         return vaults.get(vaultNumber);
     }
 
+    /**
+     * Drops the decoded inventories of this holder's idle, unmodified vaults.
+     *
+     * @param idleMillis how long a vault must have been unused, in milliseconds
+     * @return the number of vaults whose inventories were dropped
+     * @see Vault#releaseIfIdle(long)
+     */
+    public int releaseIdleVaults(long idleMillis) {
+        int released = 0;
+        for (Vault vault : vaults.values()) {
+            if (vault.releaseIfIdle(idleMillis)) released++;
+        }
+        return released;
+    }
+
+    /**
+     * Estimates how much memory this holder and its vaults take up,
+     * which bounds how many offline players' holders stay cached.
+     *
+     * @return the estimated size of the holder, in bytes
+     * @see Vault#estimateWeight()
+     */
+    public int estimateWeight() {
+        long weight = BASE_WEIGHT;
+        for (Vault vault : vaults.values()) {
+            weight += vault.estimateWeight();
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves the owner's cached vault allowance, if it hasn't expired.
+     *
+     * @return the highest vault number the owner may access, or {@code -1} if no allowance is cached
+     */
+    public int getCachedVaultAllowance() {
+        return System.currentTimeMillis() < vaultAllowanceExpiresAt ? vaultAllowance : -1;
+    }
+
+    /**
+     * Caches the owner's vault allowance for the specified time.
+     *
+     * @param allowance the highest vault number the owner may access
+     * @param ttlMillis how long the allowance stays valid, in milliseconds
+     */
+    public void cacheVaultAllowance(int allowance, long ttlMillis) {
+        vaultAllowance = allowance;
+        vaultAllowanceExpiresAt = System.currentTimeMillis() + ttlMillis;
+    }
+
+    /**
+     * Discards the owner's cached vault allowance, so it is recalculated on next use.
+     */
+    public void invalidateVaultAllowance() {
+        vaultAllowanceExpiresAt = 0;
+    }
+
+    /**
+     * Checks whether this holder has every stored vault of its owner, as a holder loaded from storage does.
+     * A holder created to hold the vaults opened so far is partial until a loaded holder is merged into it.
+     *
+     * @return {@code true} if all of the owner's vaults are loaded
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Marks this holder as having every stored vault of its owner.
+     */
+    public void markComplete() {
+        complete = true;
+    }
+
     /**
      * Retrieves a list of all vault numbers managed by this VaultHolder.
      *
@@ -0,0 +1,42 @@
+package dev.dxnny.otterVaults.managers;
+
+import lombok.Getter;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The {@link InventoryHolder} of every vault inventory, pointing straight back to its {@link Vault}.
+ * Lets inventory events identify vaults with a single {@code instanceof} check.
+ */
+@Getter
+public class VaultInventoryHolder implements InventoryHolder {
+    private final Vault vault;
+
+    public VaultInventoryHolder(Vault vault) {
+        this.vault = vault;
+    }
+
+    @Override
+    public @NotNull Inventory getInventory() {
+        return vault.getInventory();
+    }
+
+    /**
+     * Retrieves the vault backing the specified inventory.
+     * Inventories of another size are rejected before their holder is looked up, which for
+     * container blocks means creating a block state, so hoppers moving items don't pay for it.
+     *
+     * @param inventory the inventory to resolve; may be null
+     * @return the {@code Vault} whose inventory is {@code inventory}, or {@code null} if it is not a vault inventory
+     */
+    public static @Nullable Vault vaultOf(@Nullable Inventory inventory) {
+        if (inventory == null || inventory.getSize() != Vault.SIZE) return null;
+        if (inventory.getHolder(false) instanceof VaultInventoryHolder holder) {
+            return holder.getVault();
+        }
+        return null;
+    }
+
+}
@@ -1,125 +1,418 @@
 package dev.dxnny.otterVaults.managers;
 
-import dev.dxnny.otterVaults.storage.VaultDatabase;
+import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.config.Options;
+import dev.dxnny.otterVaults.storage.VaultStorage;
+import dev.dxnny.otterVaults.util.Permissions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.Getter;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class VaultManager {
 
+    // Vault holders of online players, and of offline players with a vault open. Never evicted.
     @Getter
     private final ConcurrentHashMap<UUID, VaultHolder> holders = new ConcurrentHashMap<>();
     @Getter
-    private final ConcurrentHashMap<String, Vault> activeVaults = new ConcurrentHashMap<>();
-    // Offline players' vault holders are cached for 10 minutes after last usage.
-    private final Cache<UUID, VaultHolder> vaultHolderCache = CacheBuilder.newBuilder()
-            .expireAfterAccess(10, TimeUnit.MINUTES)
-            .build();
+    private final ActiveVaultIndex activeVaults = new ActiveVaultIndex();
+    // Offline players' vault holders, bounded by their estimated size in memory, and expiring
+    // some time after last usage. Caffeine evicts with W-TinyLFU, so a holder looked up often
+    // outlives one that was loaded once by a lookup.
+    private final Cache<UUID, VaultHolder> vaultHolderCache;
 
-    private final VaultDatabase database;
+    // Holder loads in flight, so that a prefetch and a later request share one load.
+    private final ConcurrentHashMap<UUID, CompletableFuture<VaultHolder>> pendingHolderLoads = new ConcurrentHashMap<>();
 
-    public VaultManager(VaultDatabase database) {
-        this.database = database;
-    }
+    private final VaultStorage storage;
 
-    /**
-     * Generates a unique key for a vault based on the owner's UUID and the vault number.
-     *
-     * @param uuid the UUID of the vault owner
-     * @param vaultNumber the number identifying the specific vault
-     * @return a unique string key representing the vault
-     */
-    public String vaultKey(UUID uuid, int vaultNumber) {
-        return uuid.toString() + "-" + vaultNumber;
+    public VaultManager(VaultStorage storage) {
+        this.storage = storage;
+        this.vaultHolderCache = Caffeine.newBuilder()
+                .maximumWeight(Options.getHOLDER_CACHE_MAX_MB() * 1024L * 1024L)
+                .weigher((UUID uuid, VaultHolder holder) -> holder.estimateWeight())
+                .expireAfterAccess(Options.getHOLDER_CACHE_EXPIRE_MINUTES(), TimeUnit.MINUTES)
+                .evictionListener((UUID uuid, VaultHolder holder, RemovalCause cause) -> {
+                    if (holder != null) saveEvictedHolder(holder);
+                })
+                .recordStats()
+                .build();
     }
 
     /**
      * Retrieves a Vault associated with the specified owner UUID and vault number.
-     * If the vault is not already loaded in memory, it attempts to load it from the database.
-     * If the vault does not exist in the database, a new vault is created and initialized.
+     * If the vault is not already loaded in memory, it attempts to load it from the storage.
+     * If the vault does not exist in storage, a new vault is created and initialized.
      *
      * @param uuid the UUID of the vault owner
      * @param vaultNumber the number identifying the specific vault
      * @return the Vault instance associated with the specified UUID and vault number
      */
     public Vault getVault(UUID uuid, int vaultNumber) {
-        VaultHolder holder = holders.computeIfAbsent(uuid, VaultHolder::new);
+        VaultHolder holder = holderFor(uuid);
         Vault vault = holder.getVault(vaultNumber);
 
         if (vault == null) {
-            // Try loading from database.
-            vault = database.loadVault(uuid, vaultNumber);
+            // Try loading from storage.
+            vault = storage.loadVault(uuid, vaultNumber);
             if (vault == null) {
                 // Create a new vault if it does not already exist.
                 vault = new Vault(uuid, vaultNumber);
             }
             holder.addVault(vaultNumber, vault);
+            reweigh(uuid, holder);
         }
         return vault;
     }
 
     /**
-     * Unloads the specified vault and saves it to the database if necessary.
-     * If the vault was initially empty and remains unchanged, it is not saved.
+     * Retrieves a Vault like {@link #getVault(UUID, int)}, but loads it on the storage
+     * executor instead of blocking the calling thread if it isn't already in memory.
+     * If another load of the same vault finished first, its vault is returned instead.
+     *
+     * @param uuid the UUID of the vault owner
+     * @param vaultNumber the number identifying the specific vault
+     * @return a future completed with the Vault instance, possibly on a storage thread
+     */
+    public CompletableFuture<Vault> getVaultAsync(UUID uuid, int vaultNumber) {
+        VaultHolder holder = holderFor(uuid);
+        Vault vault = holder.getVault(vaultNumber);
+        if (vault != null) {
+            return CompletableFuture.completedFuture(vault);
+        }
+
+        return storage.loadVaultAsync(uuid, vaultNumber).thenApply(loaded -> {
+            Vault added = holder.addVaultIfAbsent(vaultNumber, loaded != null ? loaded : new Vault(uuid, vaultNumber));
+            reweigh(uuid, holder);
+            return added;
+        });
+    }
+
+    /**
+     * Retrieves the holder a vault of the specified owner is added to: the pinned holder if there
+     * is one, otherwise the cached holder, which is created empty if the owner has none yet.
+     * A holder created here is partial, and is completed once the owner's holder is loaded.
+     */
+    private VaultHolder holderFor(UUID uuid) {
+        VaultHolder holder = holders.get(uuid);
+        return holder != null ? holder : vaultHolderCache.get(uuid, VaultHolder::new);
+    }
+
+    /**
+     * Has the cache weigh a cached holder again after its vaults changed. Pinned holders aren't weighed.
+     */
+    private void reweigh(UUID uuid, VaultHolder holder) {
+        vaultHolderCache.asMap().replace(uuid, holder, holder);
+    }
+
+    /**
+     * Unloads the specified vault and saves it to storage if necessary.
+     * If the vault is unmodified, or was initially empty and remains empty, it is not saved.
      *
      * @param vault the vault to be unloaded
      */
     public void unloadVault(Vault vault) {
+        if (!vault.isDirty())
+            return;
         // If the vault was originally empty and remains empty, skip saving as it hasn't changed.
         if (vault.isInitiallyEmpty() && vault.isEmpty())
             return;
-        database.saveVaultAsync(vault);
+        storage.saveVaultAsync(vault);
     }
 
     /**
      * Retrieves a {@code VaultHolder} associated with the specified UUID.
-     * If not present in the cache, it will attempt to load it synchronously
-     * from the database. If successful, it will be cached for future retrievals.
+     * If neither pinned nor cached, it will attempt to load it synchronously
+     * from the storage. If successful, it will be cached for future retrievals.
+     * A cached holder is returned as is, which counts as a use towards keeping it cached.
+     * A partial holder is loaded like a missing one, and completed with the loaded vaults.
      *
      * @param uuid the UUID of the owner associated with the {@code VaultHolder}
      * @return the {@code VaultHolder} instance associated with the provided UUID,
      *         or {@code null} if no {@code VaultHolder} exists for the specified UUID.
      */
     public VaultHolder getVaultHolder(UUID uuid) {
-        if (holders.containsKey(uuid)) {
-            return holders.get(uuid);
+        VaultHolder holder = holders.get(uuid);
+        if (holder == null) {
+            holder = vaultHolderCache.getIfPresent(uuid);
+        }
+        if (holder != null && holder.isComplete()) {
+            return holder;
         }
 
-        VaultHolder holder = vaultHolderCache.getIfPresent(uuid);
+        // Synchronously load the VaultHolder from the storage.
+        VaultHolder loaded = storage.loadVaultHolder(uuid);
+        return loaded != null ? cacheVaultHolder(uuid, loaded) : holder;
+    }
+
+    /**
+     * Retrieves a {@code VaultHolder} like {@link #getVaultHolder(UUID)}, but loads it on the
+     * storage executor instead of blocking the calling thread if it isn't loaded or cached.
+     *
+     * @param uuid the UUID of the owner associated with the {@code VaultHolder}
+     * @return a future completed with the {@code VaultHolder}, possibly on a storage thread
+     */
+    public CompletableFuture<VaultHolder> getVaultHolderAsync(UUID uuid) {
+        VaultHolder holder = holders.get(uuid);
         if (holder == null) {
-            // Synchronously load the VaultHolder from the database.
-            holder = database.loadVaultHolder(uuid);
-            if (holder != null) {
-                holders.put(uuid, holder);
+            holder = vaultHolderCache.getIfPresent(uuid);
+        }
+        if (holder != null && holder.isComplete()) {
+            return CompletableFuture.completedFuture(holder);
+        }
+        return loadVaultHolder(uuid).thenApply(loaded -> cacheVaultHolder(uuid, loaded));
+    }
+
+    /**
+     * Retrieves a {@code VaultHolder} like {@link #getVaultHolderAsync(UUID)}, and pins it, so it
+     * stays loaded until {@link #unloadVaultHolder(UUID)}. Used for players who are online.
+     *
+     * @param uuid the UUID of the owner associated with the {@code VaultHolder}
+     * @return a future completed with the pinned {@code VaultHolder}, possibly on a storage thread
+     */
+    public CompletableFuture<VaultHolder> pinVaultHolderAsync(UUID uuid) {
+        VaultHolder holder = holders.get(uuid);
+        if (holder != null && holder.isComplete()) {
+            return CompletableFuture.completedFuture(holder);
+        }
+        holder = vaultHolderCache.getIfPresent(uuid);
+        if (holder != null && holder.isComplete()) {
+            return CompletableFuture.completedFuture(publishVaultHolder(uuid, holder));
+        }
+        return loadVaultHolder(uuid).thenApply(loaded -> publishVaultHolder(uuid, loaded));
+    }
+
+    /**
+     * Loads the {@code VaultHolder}s of many players at once, with a few bulk reads instead of one
+     * per player, and publishes them together in a single main-thread task. Holders that couldn't
+     * be loaded in bulk are loaded individually instead. Only the holders of players still online
+     * once loaded are pinned; the others are cached like any offline player's.
+     *
+     * @param uuids the UUIDs of the owners whose holders should be loaded
+     */
+    public void warmVaultHolders(Collection<UUID> uuids) {
+        List<UUID> missing = uuids.stream().filter(uuid -> !isCompleteHolderPinned(uuid)).toList();
+        if (missing.isEmpty()) return;
+
+        storage.loadVaultHoldersAsync(missing).thenAccept(loaded -> OtterVaults.getScheduler().runSync(() -> {
+            loaded.forEach((uuid, holder) -> {
+                if (Bukkit.getPlayer(uuid) != null) {
+                    publishVaultHolder(uuid, holder);
+                } else {
+                    cacheVaultHolder(uuid, holder);
+                }
+            });
+            for (UUID uuid : missing) {
+                if (loaded.containsKey(uuid) || Bukkit.getPlayer(uuid) == null) continue;
+                // Unpinned again if the player left while it was loading.
+                pinVaultHolderAsync(uuid).thenRun(() -> OtterVaults.getScheduler().runSync(() -> unpinIfOffline(uuid)));
+            }
+            OtterVaults.debug("Warmed " + loaded.size() + " of " + missing.size() + " vault holders in bulk.");
+        }));
+    }
+
+    /**
+     * Loads and publishes the {@code VaultHolder} of a player who is logging in, so that it is
+     * ready by the time they join. A holder still in the offline cache is reused instead.
+     * Blocks the calling thread, which must not be the main thread, for at most the given time;
+     * a load that takes longer is left running, and is picked up when the player joins.
+     *
+     * @param uuid the UUID of the player logging in
+     * @param timeoutMillis the longest to wait for the holder to load, in milliseconds
+     * @return {@code true} if the holder was published in time
+     */
+    public boolean prefetchVaultHolder(UUID uuid, long timeoutMillis) {
+        if (isCompleteHolderPinned(uuid)) {
+            return true;
+        }
+        VaultHolder cached = vaultHolderCache.getIfPresent(uuid);
+        if (cached != null && cached.isComplete()) {
+            publishVaultHolder(uuid, cached);
+            return true;
+        }
+
+        try {
+            publishVaultHolder(uuid, loadVaultHolder(uuid).get(timeoutMillis, TimeUnit.MILLISECONDS));
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean isCompleteHolderPinned(UUID uuid) {
+        VaultHolder holder = holders.get(uuid);
+        return holder != null && holder.isComplete();
+    }
+
+    /**
+     * Loads a {@code VaultHolder} from storage, sharing the load with any other caller
+     * waiting on the same holder.
+     */
+    private CompletableFuture<VaultHolder> loadVaultHolder(UUID uuid) {
+        CompletableFuture<VaultHolder> pending = pendingHolderLoads.get(uuid);
+        if (pending != null) {
+            return pending;
+        }
+
+        CompletableFuture<VaultHolder> load = new CompletableFuture<>();
+        pending = pendingHolderLoads.putIfAbsent(uuid, load);
+        if (pending != null) {
+            return pending;
+        }
+        storage.loadVaultHolderAsync(uuid).whenComplete((holder, error) -> {
+            pendingHolderLoads.remove(uuid, load);
+            if (error != null) {
+                load.completeExceptionally(error);
+            } else {
+                load.complete(holder);
             }
+        });
+        return load;
+    }
+
+    /**
+     * Pins a {@code VaultHolder}, moving it out of the cache. If a holder was pinned or cached for
+     * the owner first, that one is kept, and takes any vaults it lacks from the given holder.
+     *
+     * @return the pinned holder
+     */
+    private VaultHolder publishVaultHolder(UUID uuid, VaultHolder holder) {
+        VaultHolder cached = vaultHolderCache.asMap().remove(uuid);
+        if (cached != null && cached != holder) {
+            holder = mergeVaultHolder(cached, holder);
         }
-        return holder;
+        VaultHolder existing = holders.putIfAbsent(uuid, holder);
+        return existing != null ? mergeVaultHolder(existing, holder) : holder;
+    }
+
+    /**
+     * Caches a loaded {@code VaultHolder}, unless one was pinned or cached for the owner first,
+     * in which case that one takes any vaults it lacks from the loaded holder.
+     *
+     * @return the holder now pinned or cached for the owner
+     */
+    private VaultHolder cacheVaultHolder(UUID uuid, VaultHolder holder) {
+        VaultHolder pinned = holders.get(uuid);
+        if (pinned != null) {
+            return mergeVaultHolder(pinned, holder);
+        }
+        VaultHolder existing = vaultHolderCache.asMap().putIfAbsent(uuid, holder);
+        if (existing == null) {
+            return holder;
+        }
+        mergeVaultHolder(existing, holder);
+        reweigh(uuid, existing);
+        return existing;
+    }
+
+    /**
+     * Adds the vaults of a freshly loaded holder to a holder already in use, which may have been
+     * created with only the vaults opened so far. Vaults it already has are kept, as they may
+     * hold unsaved modifications. The existing holder is complete once a complete holder is merged in.
+     */
+    private static VaultHolder mergeVaultHolder(VaultHolder existing, VaultHolder loaded) {
+        if (existing != loaded) {
+            loaded.getVaults().forEach(existing::addVaultIfAbsent);
+            if (loaded.isComplete()) existing.markComplete();
+        }
+        return existing;
+    }
+
+    /**
+     * Saves the unsaved vaults of a holder evicted from the cache, which is otherwise
+     * the last chance to persist vaults left dirty by a failed save. Evictions can happen
+     * on any thread, so the vaults are copied for saving on the main thread.
+     */
+    private void saveEvictedHolder(VaultHolder holder) {
+        OtterVaults.getScheduler().runSync(() -> {
+            for (Vault vault : holder.getVaults().values()) {
+                unloadVault(vault);
+            }
+        });
     }
 
     /**
      * Unloads the {@code VaultHolder} associated with the specified UUID,
-     * and saves each vault if necessary. Adds the {@code VaultHolder} to
-     * the cache in case the vault is re-accessed in the next 10 minutes.
+     * and saves each vault if necessary. Moves the {@code VaultHolder} to
+     * the cache in case the vaults are re-accessed soon. While another player
+     * has one of the vaults open, the holder stays pinned until it is closed.
      *
      * @param uuid the UUID of the owner associated with the {@code VaultHolder} to be unloaded
      */
     public void unloadVaultHolder(UUID uuid) {
-        VaultHolder holder = holders.remove(uuid);
+        VaultHolder holder = activeVaults.getByOwner(uuid).isEmpty() ? holders.remove(uuid) : holders.get(uuid);
         if (holder != null) {
-            vaultHolderCache.put(uuid, holder);
             for (Vault vault : holder.getVaults().values()) {
                 unloadVault(vault);
             }
+            if (!holders.containsKey(uuid)) {
+                cacheVaultHolder(uuid, holder);
+            }
         }
     }
 
+    /**
+     * Moves the holder of an owner who is offline back to the cache, once none of their vaults are open.
+     * Must be called on the main thread.
+     */
+    private void unpinIfOffline(UUID uuid) {
+        if (Bukkit.getPlayer(uuid) != null || !activeVaults.getByOwner(uuid).isEmpty()) return;
+        VaultHolder holder = holders.remove(uuid);
+        if (holder != null) {
+            cacheVaultHolder(uuid, holder);
+        }
+    }
+
+    /**
+     * Retrieves the number of offline players' vault holders currently cached.
+     *
+     * @return the number of cached vault holders
+     */
+    public long getCachedHolderCount() {
+        return vaultHolderCache.estimatedSize();
+    }
+
+    /**
+     * Retrieves the estimated memory taken up by the cached vault holders.
+     *
+     * @return the total estimated size of the cached holders, in bytes
+     * @see VaultHolder#estimateWeight()
+     */
+    public long getCachedHolderBytes() {
+        return vaultHolderCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * Retrieves the hit, miss and eviction counts of the holder cache since startup.
+     * Only lookups of holders that aren't pinned reach the cache.
+     *
+     * @return the holder cache statistics
+     */
+    public CacheStats getHolderCacheStats() {
+        return vaultHolderCache.stats();
+    }
+
     /**
      * Retrieves a list of vault numbers from the {@code VaultHolder}
      * associated with the specified UUID.
@@ -136,38 +429,97 @@ public class VaultManager {
         return Collections.emptyList();
     }
 
+    /**
+     * Retrieves the vault numbers of the specified owner like {@link #getVaultNumbers(UUID)},
+     * without blocking the calling thread.
+     *
+     * @param uuid the UUID of the owner to retrieve vaults from
+     * @return a future completed with the vault numbers, possibly on a storage thread
+     */
+    public CompletableFuture<List<Integer>> getVaultNumbersAsync(UUID uuid) {
+        return getVaultHolderAsync(uuid).thenApply(VaultHolder::getVaultNumbers);
+    }
+
+    /**
+     * Retrieves the highest vault number the specified player may access.
+     * The allowance is cached in the player's {@code VaultHolder} until it expires or is
+     * invalidated, so repeated checks don't re-evaluate every {@code ottervaults.amount.<#>} permission.
+     * If the player's holder isn't loaded yet, the allowance is calculated without being cached.
+     *
+     * @param player the player whose allowance should be retrieved
+     * @return the highest accessible vault number, {@link Integer#MAX_VALUE} for admins,
+     *         or {@code 0} if the player may not access any vaults
+     */
+    public int getVaultAllowance(Player player) {
+        VaultHolder holder = holders.get(player.getUniqueId());
+        if (holder == null) {
+            return Permissions.calculateVaultAllowance(player);
+        }
+
+        int allowance = holder.getCachedVaultAllowance();
+        if (allowance < 0) {
+            allowance = Permissions.calculateVaultAllowance(player);
+            holder.cacheVaultAllowance(allowance, TimeUnit.SECONDS.toMillis(Options.getALLOWANCE_CACHE_SECONDS()));
+        }
+        return allowance;
+    }
+
+    /**
+     * Discards the cached vault allowance of the specified player, if any.
+     *
+     * @param uuid the UUID of the player whose permissions changed
+     */
+    public void invalidateVaultAllowance(UUID uuid) {
+        VaultHolder holder = holders.get(uuid);
+        if (holder != null) {
+            holder.invalidateVaultAllowance();
+        }
+    }
+
     /**
      * Activates the specified vault by adding it to the collection of active vaults.
+     * The owner's holder is pinned while the vault is open, so it can't be evicted from under the viewer.
      *
      * @param vault the vault to be activated
+     * @param viewerUUID the UUID of the player the vault is opened for
      */
-    public void activateVault(Vault vault) {
-        activeVaults.put(vaultKey(vault.getOwnerUUID(), vault.getVaultNumber()), vault);
+    public void activateVault(Vault vault, UUID viewerUUID) {
+        activeVaults.add(vault, viewerUUID);
+        VaultHolder cached = vaultHolderCache.asMap().get(vault.getOwnerUUID());
+        if (cached != null) {
+            publishVaultHolder(vault.getOwnerUUID(), cached);
+        }
     }
 
     /**
-     * Deactivates the specified vault by removing its key from the collection of active vaults.
+     * Deactivates the specified vault by removing it from the collection of active vaults.
+     * Must be called on the main thread.
      *
      * @param vault the vault to be deactivated
      */
     public void deactivateVault(Vault vault) {
-        activeVaults.remove(vaultKey(vault.getOwnerUUID(), vault.getVaultNumber()));
+        activeVaults.remove(vault);
+        unpinIfOffline(vault.getOwnerUUID());
     }
 
     /**
      * Retrieves a list of active vaults owned by the specified player.
      *
      * @param playerUUID the UUID of the player whose active vaults should be retrieved
-     * @return a list of {@code Vault} instances that are currently active and owned by the given player
+     * @return an unmodifiable list of {@code Vault} instances that are currently active and owned by the given player
      */
     public List<Vault> getActiveVaultsForPlayer(UUID playerUUID) {
-        List<Vault> active = new ArrayList<>();
-        for (Vault vault : activeVaults.values()) {
-            if (vault.getOwnerUUID().equals(playerUUID)) {
-                active.add(vault);
-            }
-        }
-        return active;
+        return activeVaults.getByOwner(playerUUID);
+    }
+
+    /**
+     * Retrieves the active vault the specified player is viewing.
+     *
+     * @param viewerUUID the UUID of the viewing player
+     * @return the {@code Vault} being viewed, or {@code null} if the player isn't viewing a vault
+     */
+    public Vault getActiveVaultForViewer(UUID viewerUUID) {
+        return activeVaults.getByViewer(viewerUUID);
     }
 
     /**
@@ -178,7 +530,7 @@ public class VaultManager {
      * @return {@code true} if the vault is open, {@code false} otherwise
      */
     public boolean isVaultOpen(UUID uuid, int vaultNumber) {
-        return activeVaults.containsKey(vaultKey(uuid, vaultNumber));
+        return activeVaults.get(uuid, vaultNumber) != null;
     }
 
     /**
@@ -189,27 +541,79 @@ public class VaultManager {
      */
     public void unlockVault(Vault vault) {
         vault.unlock();
-        activeVaults.remove(vaultKey(vault.getOwnerUUID(), vault.getVaultNumber()));
+        activeVaults.remove(vault);
+        unpinIfOffline(vault.getOwnerUUID());
+
+        storage.saveVaultAsync(vault);
+    }
 
-        database.saveVaultAsync(vault);
+    /**
+     * Drops the decoded inventories of loaded vaults that have been unused for
+     * the specified time and have no unsaved modifications, keeping only their
+     * stored bytes. They are decoded again the next time they are opened.
+     * Must be called on the main thread.
+     *
+     * @param idleMillis how long a vault must have been unused, in milliseconds
+     * @return the number of vaults whose inventories were dropped
+     */
+    public int releaseIdleVaults(long idleMillis) {
+        int released = 0;
+        for (VaultHolder holder : holders.values()) {
+            released += holder.releaseIdleVaults(idleMillis);
+        }
+        for (Map.Entry<UUID, VaultHolder> entry : vaultHolderCache.asMap().entrySet()) {
+            int dropped = entry.getValue().releaseIdleVaults(idleMillis);
+            if (dropped > 0) {
+                reweigh(entry.getKey(), entry.getValue());
+                released += dropped;
+            }
+        }
+        return released;
     }
 
     /**
-     * Saves all vaults currently stored in memory to the database if necessary.
-     * This method iterates through all loaded VaultHolders and their associated
-     * Vaults. Each vault is saved to the database if it has been modified.
-     * The operation must be performed synchronously, ensuring consistent data
-     * persistence during shutdown or other critical operations.
+     * Collects the loaded vaults with unsaved modifications, including those of cached
+     * offline players whose save on quit failed. Vaults that were created empty and are
+     * still empty are left out, as they have nothing worth storing.
+     * Must be called on the main thread.
+     *
+     * @return the vaults to be saved
      */
-    public void flushAllVaults() {
+    public List<Vault> getDirtyVaults() {
+        List<Vault> dirty = new ArrayList<>();
         for (VaultHolder holder : holders.values()) {
-            for (Vault vault : holder.getVaults().values()) {
-                if (!vault.isInitiallyEmpty() || !vault.isEmpty()) {
-                    // Perform a synchronous save on shutdown.
-                    database.saveVault(vault);
-                }
+            collectDirtyVaults(holder, dirty);
+        }
+        for (VaultHolder holder : vaultHolderCache.asMap().values()) {
+            collectDirtyVaults(holder, dirty);
+        }
+        return dirty;
+    }
+
+    private void collectDirtyVaults(VaultHolder holder, List<Vault> dirty) {
+        for (Vault vault : holder.getVaults().values()) {
+            if (vault.isDirty() && (!vault.isInitiallyEmpty() || !vault.isEmpty())) {
+                dirty.add(vault);
             }
         }
     }
 
+    /**
+     * Saves all loaded vaults with unsaved modifications on shutdown. They are written in
+     * parallel batches within the given time, and any not written by then are kept in the
+     * recovery file until the next start.
+     * Must be called on the main thread.
+     *
+     * @param timeoutMillis how long to wait for the writes, in milliseconds
+     * @param recoveryFile the file vaults not written in time are kept in
+     */
+    public void flushAllVaults(long timeoutMillis, File recoveryFile) {
+        List<Vault> dirty = getDirtyVaults();
+        if (dirty.isEmpty()) return;
+
+        long startTime = System.nanoTime();
+        int written = storage.flushVaults(dirty, timeoutMillis, recoveryFile);
+        OtterVaults.debug("Saved " + written + " of " + dirty.size() + " vaults in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms.");
+    }
+
 }
\ No newline at end of file
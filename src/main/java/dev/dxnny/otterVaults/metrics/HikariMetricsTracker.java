@@ -0,0 +1,35 @@
+package dev.dxnny.otterVaults.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Feeds connection pool wait times and timeouts into {@link VaultMetrics}.
+ */
+public class HikariMetricsTracker implements IMetricsTracker {
+
+    /**
+     * Creates the factory to register with {@code HikariConfig#setMetricsTrackerFactory}.
+     *
+     * @return a factory creating trackers that report to {@link VaultMetrics}
+     */
+    public static MetricsTrackerFactory factory() {
+        return (poolName, poolStats) -> new HikariMetricsTracker(poolStats);
+    }
+
+    private HikariMetricsTracker(PoolStats poolStats) {
+        VaultMetrics.setPoolStats(poolStats);
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        VaultMetrics.getPOOL_WAIT().record(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        VaultMetrics.recordPoolTimeout();
+    }
+
+}
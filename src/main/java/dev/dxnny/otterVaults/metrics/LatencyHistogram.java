@@ -0,0 +1,107 @@
+package dev.dxnny.otterVaults.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram. Durations are bucketed by their highest set bit, with four
+ * linear sub-buckets per power of two, so percentiles are accurate to within 25% while
+ * recording stays a single atomic increment. Counts are cumulative since startup.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(indexOf(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Records the time elapsed since the given start time.
+     *
+     * @param startNanos the start time, from {@link System#nanoTime()}
+     * @return the recorded duration in nanoseconds
+     */
+    public long recordSince(long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        record(duration);
+        return duration;
+    }
+
+    /**
+     * Takes a snapshot of the recorded durations. Concurrent recordings may be partially included.
+     *
+     * @return the current percentiles, maximum and count
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long max = maxNanos.get();
+        return new Snapshot(total, totalNanos.sum(), percentile(counts, total, 0.5, max), percentile(counts, total, 0.99, max), max);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int msb = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long width = 1L << (msb - SUB_BUCKET_BITS);
+        return (1L << msb) + (sub + 1) * width - 1;
+    }
+
+    /**
+     * A point-in-time view of a histogram. Durations are in nanoseconds.
+     */
+    public record Snapshot(long count, long totalNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+
+        public double p50Millis() {
+            return p50Nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public double p99Millis() {
+            return p99Nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public double maxMillis() {
+            return maxNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+}
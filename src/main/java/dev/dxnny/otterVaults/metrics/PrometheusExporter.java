@@ -0,0 +1,121 @@
+package dev.dxnny.otterVaults.metrics;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.zaxxer.hikari.metrics.PoolStats;
+import dev.dxnny.otterVaults.managers.VaultManager;
+import dev.dxnny.otterVaults.storage.StorageExecutor;
+import dev.dxnny.otterVaults.util.Compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Writes {@link VaultMetrics} to a file in the Prometheus text exposition format,
+ * for collection by node_exporter's textfile collector or similar.
+ */
+public class PrometheusExporter {
+    private final Path file;
+    private final VaultManager vaultManager;
+    private final StorageExecutor executor;
+
+    /**
+     * Constructs an exporter writing to the specified file.
+     *
+     * @param file the file metrics are written to; replaced atomically on every write
+     * @param vaultManager the manager holder and vault counts are read from
+     * @param executor the storage executor queue metrics are read from
+     */
+    public PrometheusExporter(Path file, VaultManager vaultManager, StorageExecutor executor) {
+        this.file = file;
+        this.vaultManager = vaultManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Renders the current metrics in the Prometheus text format.
+     *
+     * @return the rendered metrics
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        summary(out, "ottervaults_load_seconds", "Time spent loading vaults from storage.", VaultMetrics.getLOAD_LATENCY());
+        summary(out, "ottervaults_save_seconds", "Time spent writing vaults, or batches of vaults, to storage.", VaultMetrics.getSAVE_LATENCY());
+        summary(out, "ottervaults_serialize_seconds", "Time spent serializing vault inventories.", VaultMetrics.getSERIALIZE_LATENCY());
+        summary(out, "ottervaults_deserialize_seconds", "Time spent deserializing vault inventories.", VaultMetrics.getDESERIALIZE_LATENCY());
+        summary(out, "ottervaults_pool_wait_seconds", "Time spent waiting for a database connection.", VaultMetrics.getPOOL_WAIT());
+
+        metric(out, "ottervaults_pool_timeouts_total", "counter", "Database connection requests that timed out.", VaultMetrics.getPoolTimeouts());
+        PoolStats poolStats = VaultMetrics.getPOOL_STATS();
+        if (poolStats != null) {
+            metric(out, "ottervaults_pool_active_connections", "gauge", "Database connections in use.", poolStats.getActiveConnections());
+            metric(out, "ottervaults_pool_idle_connections", "gauge", "Idle database connections.", poolStats.getIdleConnections());
+            metric(out, "ottervaults_pool_pending_threads", "gauge", "Threads waiting for a database connection.", poolStats.getPendingThreads());
+        }
+
+        metric(out, "ottervaults_storage_queue_depth", "gauge", "Storage tasks waiting to run.", executor.getQueueDepth());
+        metric(out, "ottervaults_storage_active_tasks", "gauge", "Storage tasks currently running.", executor.getActiveCount());
+        metric(out, "ottervaults_storage_completed_total", "counter", "Storage tasks completed.", executor.getCompletedCount());
+        metric(out, "ottervaults_storage_overflow_total", "counter", "Storage tasks admitted past the queue bound from the main thread.", executor.getOverflowCount());
+
+        metric(out, "ottervaults_active_holders", "gauge", "Vault holders of online players, and of offline players with a vault open.", vaultManager.getHolders().size());
+        metric(out, "ottervaults_cached_holders", "gauge", "Vault holders of offline players kept in the cache.", vaultManager.getCachedHolderCount());
+        metric(out, "ottervaults_cached_holder_bytes", "gauge", "Estimated memory taken up by cached vault holders.", vaultManager.getCachedHolderBytes());
+        CacheStats holderCache = vaultManager.getHolderCacheStats();
+        metric(out, "ottervaults_holder_cache_hits_total", "counter", "Lookups of offline players' vault holders found in the cache.", holderCache.hitCount());
+        metric(out, "ottervaults_holder_cache_misses_total", "counter", "Lookups of offline players' vault holders that had to load them.", holderCache.missCount());
+        metric(out, "ottervaults_holder_cache_evictions_total", "counter", "Vault holders evicted from the cache to stay within its size.", holderCache.evictionCount());
+        metric(out, "ottervaults_offheap_cache_hits_total", "counter", "Vault loads served from the off-heap cache.", VaultMetrics.getOffHeapHits());
+        metric(out, "ottervaults_offheap_cache_misses_total", "counter", "Vault loads not found in the off-heap cache.", VaultMetrics.getOffHeapMisses());
+        metric(out, "ottervaults_offheap_cache_bytes", "gauge", "Direct memory taken up by current off-heap cache entries.", VaultMetrics.getOFFHEAP_CACHE_BYTES());
+        metric(out, "ottervaults_open_vaults", "gauge", "Vaults currently open.", vaultManager.getActiveVaults().size());
+        metric(out, "ottervaults_prefetch_hits_total", "counter", "Joins whose vault holder was loaded before the player joined.", VaultMetrics.getPrefetchHits());
+        metric(out, "ottervaults_prefetch_misses_total", "counter", "Joins whose vault holder was still loading when the player joined.", VaultMetrics.getPrefetchMisses());
+
+        metric(out, "ottervaults_written_bytes_total", "counter", "Bytes written to storage.", VaultMetrics.getBytesWritten());
+        metric(out, "ottervaults_written_bytes_last_minute", "gauge", "Bytes written to storage in the last full minute.", VaultMetrics.getBYTES_WRITTEN_LAST_MINUTE());
+        metric(out, "ottervaults_compression_raw_bytes_total", "counter", "Serialized bytes passed to compression.", Compression.getRawBytes());
+        metric(out, "ottervaults_compression_stored_bytes_total", "counter", "Bytes produced by compression.", Compression.getStoredBytes());
+        return out.toString();
+    }
+
+    /**
+     * Renders the current metrics and replaces the metrics file with them.
+     * Should be called asynchronously.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void write() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, render(), StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        header(out, name, "summary", help);
+        out.append(name).append("{quantile=\"0.5\"} ").append(seconds(snapshot.p50Nanos())).append('\n');
+        out.append(name).append("{quantile=\"0.99\"} ").append(seconds(snapshot.p99Nanos())).append('\n');
+        out.append(name).append("{quantile=\"1\"} ").append(seconds(snapshot.maxNanos())).append('\n');
+        out.append(name).append("_sum ").append(seconds(snapshot.totalNanos())).append('\n');
+        out.append(name).append("_count ").append(snapshot.count()).append('\n');
+    }
+
+    private static void metric(StringBuilder out, String name, String type, String help, long value) {
+        header(out, name, type, help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+}
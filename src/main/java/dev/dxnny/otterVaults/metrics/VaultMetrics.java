@@ -0,0 +1,121 @@
+package dev.dxnny.otterVaults.metrics;
+
+import com.zaxxer.hikari.metrics.PoolStats;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime metrics for vault storage, recorded from the storage and serialization paths.
+ * Reported by {@code /vaults stats}, and optionally exported by {@link PrometheusExporter}.
+ */
+public class VaultMetrics {
+
+    /** Reading a vault or a player's vaults from storage. */
+    @Getter
+    private static final LatencyHistogram LOAD_LATENCY = new LatencyHistogram();
+    /** Writing a vault, or a batch of vaults, to storage. */
+    @Getter
+    private static final LatencyHistogram SAVE_LATENCY = new LatencyHistogram();
+    /** Serializing a vault's inventory. */
+    @Getter
+    private static final LatencyHistogram SERIALIZE_LATENCY = new LatencyHistogram();
+    /** Deserializing a vault's inventory. */
+    @Getter
+    private static final LatencyHistogram DESERIALIZE_LATENCY = new LatencyHistogram();
+    /** Waiting for a connection from the pool. */
+    @Getter
+    private static final LatencyHistogram POOL_WAIT = new LatencyHistogram();
+
+    private static final LongAdder bytesWritten = new LongAdder();
+    private static final LongAdder poolTimeouts = new LongAdder();
+    private static final LongAdder prefetchHits = new LongAdder();
+    private static final LongAdder prefetchMisses = new LongAdder();
+    private static final LongAdder offHeapHits = new LongAdder();
+    private static final LongAdder offHeapMisses = new LongAdder();
+    @Getter
+    private static volatile long BYTES_WRITTEN_LAST_MINUTE;
+    private static long bytesWrittenAtLastRoll;
+    @Getter
+    private static volatile PoolStats POOL_STATS;
+    @Getter
+    private static volatile long OFFHEAP_CACHE_BYTES;
+
+    /**
+     * Records bytes written to storage.
+     *
+     * @param bytes the number of bytes written
+     */
+    public static void recordBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * Records whether a joining player's vault holder had already been prefetched.
+     *
+     * @param hit {@code true} if the holder was loaded before the player joined
+     */
+    public static void recordPrefetch(boolean hit) {
+        (hit ? prefetchHits : prefetchMisses).increment();
+    }
+
+    /**
+     * Records whether a player's vaults were found in the off-heap cache.
+     *
+     * @param hit {@code true} if the vaults were served from the cache
+     */
+    public static void recordOffHeapLookup(boolean hit) {
+        (hit ? offHeapHits : offHeapMisses).increment();
+    }
+
+    /**
+     * Records the bytes taken up by the current entries of the off-heap cache.
+     *
+     * @param bytes the bytes used
+     */
+    public static void setOffHeapCacheBytes(long bytes) {
+        OFFHEAP_CACHE_BYTES = bytes;
+    }
+
+    static void recordPoolTimeout() {
+        poolTimeouts.increment();
+    }
+
+    static void setPoolStats(PoolStats poolStats) {
+        POOL_STATS = poolStats;
+    }
+
+    /**
+     * Closes the current one-minute window of bytes written. Must be called once a minute.
+     */
+    public static synchronized void rollMinute() {
+        long total = bytesWritten.sum();
+        BYTES_WRITTEN_LAST_MINUTE = total - bytesWrittenAtLastRoll;
+        bytesWrittenAtLastRoll = total;
+    }
+
+    public static long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public static long getPoolTimeouts() {
+        return poolTimeouts.sum();
+    }
+
+    public static long getPrefetchHits() {
+        return prefetchHits.sum();
+    }
+
+    public static long getPrefetchMisses() {
+        return prefetchMisses.sum();
+    }
+
+    public static long getOffHeapHits() {
+        return offHeapHits.sum();
+    }
+
+    public static long getOffHeapMisses() {
+        return offHeapMisses.sum();
+    }
+
+}
@@ -0,0 +1,971 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.config.Options;
+import dev.dxnny.otterVaults.managers.Vault;
+import dev.dxnny.otterVaults.managers.VaultHolder;
+import dev.dxnny.otterVaults.metrics.VaultMetrics;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.ItemCounts;
+import dev.dxnny.otterVaults.util.Serializers;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The backend-independent half of a {@link VaultStorage}: serialization, dirty tracking,
+ * compression, write-behind batching, the off-heap cache, item counting, metrics and error
+ * reporting. Backends only implement the raw reads and writes of stored bytes.
+ */
+public abstract class AbstractVaultStorage implements VaultStorage {
+    // The most owners read by a single bulk query.
+    protected static final int BULK_LOAD_CHUNK_SIZE = 500;
+    // The order vaults are locked in for a write, see persistAll.
+    private static final Comparator<PendingWrite> WRITE_ORDER = Comparator
+            .comparing((PendingWrite write) -> write.vault().getOwnerUUID())
+            .thenComparingInt(write -> write.vault().getVaultNumber());
+
+    protected final Logger logger;
+    protected final StorageExecutor executor;
+    private final WriteBehindQueue writeBehind;
+    // Null unless storage.offheap_cache.max_megabytes is set.
+    private final OffHeapVaultCache offHeapCache;
+
+    /**
+     * Configures compression, write-behind and the off-heap cache from {@link Options}.
+     * Backends must call {@link #loadDictionaries()} once they are ready to be read from.
+     *
+     * @param logger the logger used to report storage errors
+     * @param executor the executor asynchronous operations and background jobs are run on
+     */
+    protected AbstractVaultStorage(Logger logger, StorageExecutor executor) {
+        this.logger = logger;
+        this.executor = executor;
+
+        Compression.configure(Options.getCOMPRESSION_CODEC(), Options.getCOMPRESSION_LEVEL(), Options.isCOMPRESSION_USE_DICTIONARY());
+        this.writeBehind = Options.isWRITE_BEHIND_ENABLED()
+                ? new WriteBehindQueue(this, executor, logger, Options.getWRITE_BEHIND_MAX_LATENCY_MS(), Options.getWRITE_BEHIND_MAX_BATCH_SIZE())
+                : null;
+        this.offHeapCache = Options.getOFFHEAP_CACHE_MAX_MB() > 0
+                ? new OffHeapVaultCache(Options.getOFFHEAP_CACHE_MAX_MB() * 1024L * 1024L)
+                : null;
+    }
+
+    /**
+     * Reads the stored bytes of a single vault.
+     *
+     * @return the stored bytes, or {@code null} if the vault doesn't exist
+     */
+    protected abstract byte[] readVault(UUID ownerUUID, int vaultNumber) throws StorageException;
+
+    /**
+     * Reads the stored bytes of all vaults of a player.
+     *
+     * @return the stored bytes of each vault, by vault number
+     */
+    protected abstract Map<Integer, byte[]> readVaults(UUID ownerUUID) throws StorageException;
+
+    /**
+     * Reads the stored bytes of all vaults of many players, passing each vault to the consumer
+     * as it is read. Reads each player separately unless a backend has a bulk read.
+     */
+    protected void readVaults(Collection<UUID> ownerUUIDs, VaultRowConsumer consumer) throws StorageException {
+        for (UUID ownerUUID : ownerUUIDs) {
+            for (Map.Entry<Integer, byte[]> vault : readVaults(ownerUUID).entrySet()) {
+                consumer.accept(ownerUUID, vault.getKey(), vault.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the stored bytes of a single vault, replacing any existing row.
+     */
+    protected abstract void writeVault(UUID ownerUUID, int vaultNumber, byte[] data) throws StorageException;
+
+    /**
+     * Writes the stored bytes of several vaults atomically, replacing any existing rows.
+     * Backends that {@link #supportsDeltas() support deltas} append the delta writes among them.
+     */
+    protected abstract void writeVaults(List<PendingWrite> writes) throws StorageException;
+
+    /**
+     * Determines if the backend can currently store slot deltas. Saves write whole vaults otherwise.
+     *
+     * @return {@code true} if {@link #writeVaultDelta(UUID, int, byte[], byte[])} may be called
+     */
+    protected boolean supportsDeltas() {
+        return false;
+    }
+
+    /**
+     * Appends the slots that changed in a save to a stored vault. The backend writes the whole
+     * vault instead when enough deltas have built up since its last snapshot. Backends without
+     * deltas always write the whole vault.
+     *
+     * @param delta the compressed changed slots
+     * @param fullData the whole vault, packed but uncompressed
+     */
+    protected void writeVaultDelta(UUID ownerUUID, int vaultNumber, byte[] delta, byte[] fullData) throws StorageException {
+        writeVault(ownerUUID, vaultNumber, Compression.compress(fullData));
+    }
+
+    /**
+     * Determines if the backend keeps an item index. Saves then count the items in each vault,
+     * and are written through {@link #writeVaults(List)}, which indexes them in the same transaction.
+     *
+     * @return {@code true} if pending writes should carry their item counts
+     */
+    protected boolean indexesItems() {
+        return false;
+    }
+
+    /**
+     * Reads a page of the vaults holding an item from the item index.
+     *
+     * @return the vaults holding the item, largest amounts first, or {@code null} if the backend has no item index
+     * @see VaultStorage#searchItems(String, String, int, int)
+     */
+    protected List<ItemMatch> findItems(String material, String component, int offset, int limit) throws StorageException {
+        return null;
+    }
+
+    /**
+     * Removes a stored vault.
+     *
+     * @return {@code true} if a stored vault was removed
+     */
+    protected abstract boolean removeVault(UUID ownerUUID, int vaultNumber) throws StorageException;
+
+    /**
+     * Reads the stored bytes of a random sample of vaults.
+     */
+    protected abstract List<byte[]> sampleVaults(int sampleSize) throws StorageException;
+
+    /**
+     * Reads every stored compression dictionary.
+     *
+     * @return the dictionaries by id, in ascending id order
+     */
+    protected abstract Map<Integer, byte[]> readDictionaries() throws StorageException;
+
+    /**
+     * Stores a compression dictionary under the next free id.
+     *
+     * @return the id the dictionary was stored under
+     */
+    protected abstract int writeDictionary(byte[] dictionary) throws StorageException;
+
+    /**
+     * Releases the backend's resources. Called once pending saves have been written.
+     */
+    protected abstract void close();
+
+    /**
+     * Registers every stored compression dictionary, so that blobs written with
+     * any of them can be read. The most recently trained one becomes active.
+     */
+    protected void loadDictionaries() {
+        try {
+            readDictionaries().forEach((id, dictionary) -> Compression.registerDictionary(id, dictionary, true));
+        } catch (StorageException e) {
+            logger.log(Level.SEVERE, "Error while loading compression dictionaries!", e);
+        }
+    }
+
+    @Override
+    public Vault loadVault(UUID ownerUUID, int vaultNumber) {
+        warnIfPrimaryThread("loadVault");
+        long startTime = System.nanoTime();
+        try {
+            Map<Integer, byte[]> cached = offHeapCache == null ? null : offHeapCache.get(ownerUUID);
+            byte[] data = cached != null ? cached.get(vaultNumber) : readVault(ownerUUID, vaultNumber);
+            return data == null ? null : new Vault(ownerUUID, vaultNumber, data);
+        } catch (StorageException e) {
+            logger.warning("Error while loading vault #" + vaultNumber + " for player " + ownerUUID + ": " + e.getMessage());
+        } finally {
+            VaultMetrics.getLOAD_LATENCY().recordSince(startTime);
+        }
+        return null;
+    }
+
+    @Override
+    public VaultHolder loadVaultHolder(UUID ownerUUID) {
+        warnIfPrimaryThread("loadVaultHolder");
+        long startTime = System.nanoTime();
+        VaultHolder holder = new VaultHolder(ownerUUID);
+        try {
+            readVaultsCached(ownerUUID).forEach((vaultNumber, data) -> holder.addVault(vaultNumber, new Vault(ownerUUID, vaultNumber, data)));
+            holder.markComplete();
+        } catch (StorageException e) {
+            logger.warning("Error while loading vault holder " + ownerUUID + ": " + e.getMessage());
+        } finally {
+            VaultMetrics.getLOAD_LATENCY().recordSince(startTime);
+        }
+        return holder;
+    }
+
+    @Override
+    public Map<UUID, VaultHolder> loadVaultHolders(Collection<UUID> ownerUUIDs) {
+        warnIfPrimaryThread("loadVaultHolders");
+        long startTime = System.nanoTime();
+        Map<UUID, VaultHolder> holders = new HashMap<>();
+        // The owners to read from storage, with their generation in the off-heap cache.
+        Map<UUID, Long> uncached = new HashMap<>();
+        for (UUID ownerUUID : ownerUUIDs) {
+            VaultHolder holder = new VaultHolder(ownerUUID);
+            holders.put(ownerUUID, holder);
+            Map<Integer, byte[]> cached = offHeapCache == null ? null : offHeapCache.get(ownerUUID);
+            if (cached != null) {
+                cached.forEach((vaultNumber, data) -> holder.addVault(vaultNumber, new Vault(ownerUUID, vaultNumber, data)));
+                holder.markComplete();
+            } else {
+                uncached.put(ownerUUID, offHeapCache == null ? 0 : offHeapCache.generation(ownerUUID));
+            }
+        }
+        if (uncached.isEmpty()) return holders;
+
+        try {
+            // Inventories are decoded on first open, so grouping the rows is all the work done here.
+            readVaults(uncached.keySet(), (ownerUUID, vaultNumber, data) ->
+                    holders.get(ownerUUID).addVault(vaultNumber, new Vault(ownerUUID, vaultNumber, data)));
+            uncached.keySet().forEach(ownerUUID -> holders.get(ownerUUID).markComplete());
+            if (offHeapCache != null) {
+                uncached.forEach((ownerUUID, generation) -> {
+                    Map<Integer, byte[]> vaults = new HashMap<>();
+                    holders.get(ownerUUID).getVaults().forEach((vaultNumber, vault) -> vaults.put(vaultNumber, vault.getStoredData()));
+                    offHeapCache.fill(ownerUUID, generation, vaults);
+                });
+            }
+        } catch (StorageException e) {
+            logger.warning("Error while loading " + ownerUUIDs.size() + " vault holders: " + e.getMessage());
+            return null;
+        } finally {
+            VaultMetrics.getLOAD_LATENCY().recordSince(startTime);
+        }
+        return holders;
+    }
+
+    /**
+     * Saves the specified vault synchronously, by serializing its inventory.
+     * Vaults without modifications are skipped before serialization, and vaults
+     * whose serialized bytes match the last persisted bytes are skipped before the write.
+     * Logs a warning to console if the operation takes longer than 100ms.
+     * Should be called asynchronously, and only for vaults no player can be modifying,
+     * since the live inventory is read on the calling thread.
+     *
+     * @param vault the {@code Vault} instance to be saved
+     */
+    @Override
+    public void saveVault(Vault vault) {
+        warnIfPrimaryThread("saveVault");
+        if (!vault.isDirty()) return;
+
+        long version = vault.getVersion();
+        saveCopy(new VaultCopy(vault, version, vault.getInventory().getContents()));
+    }
+
+    /**
+     * Serializes and writes a vault's copied contents, as {@link #saveVault(Vault)} does.
+     */
+    private void saveCopy(VaultCopy copy) {
+        Vault vault = copy.vault();
+        long startTime = System.nanoTime();
+        PendingWrite write = prepareWrite(vault, copy.version(), copy.contents());
+        if (write == null) return;
+
+        try {
+            persist(write);
+        } catch (StorageException e) {
+            logger.log(Level.SEVERE, "Error while saving vault " + vault.getVaultNumber() + " for " + vault.getOwnerUUID().toString(), e);
+        } finally {
+            long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            if (durationMs > 100) {
+                logger.warning("Warning: Took " + durationMs + "ms to save vault " + vault.getVaultNumber());
+            }
+        }
+    }
+
+    /**
+     * Saves the specified vaults synchronously in a single transaction. Clean vaults, and vaults
+     * whose serialized bytes match the last persisted bytes, are skipped as in {@link #saveVault(Vault)}.
+     * Should be called asynchronously, and only for vaults no player can be modifying,
+     * since the live inventories are read on the calling thread.
+     *
+     * @param vaults the {@code Vault} instances to be saved
+     * @return the number of vaults written, or {@code -1} if the transaction failed
+     */
+    @Override
+    public int saveVaults(Collection<Vault> vaults) {
+        warnIfPrimaryThread("saveVaults");
+        List<VaultCopy> copies = new ArrayList<>(vaults.size());
+        for (Vault vault : vaults) {
+            if (!vault.isDirty()) continue;
+            long version = vault.getVersion();
+            copies.add(new VaultCopy(vault, version, vault.getInventory().getContents()));
+        }
+        return saveCopies(copies);
+    }
+
+    /**
+     * Serializes and writes copied vault contents in a single transaction, as {@link #saveVaults(Collection)} does.
+     *
+     * @param copies the copied contents of the vaults to be saved
+     * @return the number of vaults written, or {@code -1} if the transaction failed
+     */
+    int saveCopies(Collection<VaultCopy> copies) {
+        List<PendingWrite> writes = new ArrayList<>(copies.size());
+        for (VaultCopy copy : copies) {
+            PendingWrite write = prepareWrite(copy.vault(), copy.version(), copy.contents());
+            if (write != null) writes.add(write);
+        }
+        if (writes.isEmpty()) return 0;
+
+        try {
+            return persistAll(writes);
+        } catch (StorageException e) {
+            logger.log(Level.SEVERE, "Error while saving a batch of " + writes.size() + " vaults", e);
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean deleteVault(UUID ownerUUID, int vaultNumber) {
+        warnIfPrimaryThread("deleteVault");
+        try {
+            boolean removed = removeVault(ownerUUID, vaultNumber);
+            if (offHeapCache != null) offHeapCache.update(ownerUUID, vaultNumber, null);
+            return removed;
+        } catch (StorageException e) {
+            if (offHeapCache != null) offHeapCache.invalidate(ownerUUID);
+            logger.log(Level.SEVERE, "Error while deleting vault " + vaultNumber + " for " + ownerUUID, e);
+        }
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Vault> loadVaultAsync(UUID ownerUUID, int vaultNumber) {
+        return executor.supply(StorageExecutor.Priority.HIGH, () -> loadVault(ownerUUID, vaultNumber));
+    }
+
+    @Override
+    public CompletableFuture<VaultHolder> loadVaultHolderAsync(UUID ownerUUID) {
+        return executor.supply(StorageExecutor.Priority.HIGH, () -> loadVaultHolder(ownerUUID));
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, VaultHolder>> loadVaultHoldersAsync(Collection<UUID> ownerUUIDs) {
+        List<UUID> owners = List.copyOf(ownerUUIDs);
+        List<CompletableFuture<Map<UUID, VaultHolder>>> chunks = new ArrayList<>();
+        for (int i = 0; i < owners.size(); i += BULK_LOAD_CHUNK_SIZE) {
+            List<UUID> chunk = owners.subList(i, Math.min(i + BULK_LOAD_CHUNK_SIZE, owners.size()));
+            chunks.add(executor.supply(StorageExecutor.Priority.HIGH, () -> loadVaultHolders(chunk)));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).handle((ignored, error) -> {
+            Map<UUID, VaultHolder> holders = new HashMap<>();
+            for (CompletableFuture<Map<UUID, VaultHolder>> chunk : chunks) {
+                Map<UUID, VaultHolder> loaded = chunk.isCompletedExceptionally() ? null : chunk.join();
+                if (loaded != null) holders.putAll(loaded);
+            }
+            return holders;
+        });
+    }
+
+    /**
+     * Copies the contents of the vault on the calling thread, then serializes and writes the copy
+     * in the background, so the write never reads an inventory a player is modifying.
+     */
+    @Override
+    public void saveVaultAsync(Vault vault) {
+        VaultCopy copy = VaultCopy.of(vault);
+        if (copy == null) return;
+        if (writeBehind != null) {
+            writeBehind.enqueue(copy);
+            return;
+        }
+        executor.submit(StorageExecutor.Priority.LOW, () -> saveCopy(copy));
+    }
+
+    /**
+     * Copies the contents of the vaults on the calling thread, then serializes and writes the copies
+     * in the background, as {@link #saveVaultAsync(Vault)} does.
+     */
+    @Override
+    public CompletableFuture<Integer> saveVaultsAsync(Collection<Vault> vaults) {
+        List<VaultCopy> copies = new ArrayList<>(vaults.size());
+        for (Vault vault : vaults) {
+            VaultCopy copy = VaultCopy.of(vault);
+            if (copy != null) copies.add(copy);
+        }
+        return executor.supply(StorageExecutor.Priority.LOW, () -> saveCopies(copies));
+    }
+
+    @Override
+    public Checkpoint checkpointVault(Vault vault) {
+        return prepareWrite(vault);
+    }
+
+    @Override
+    public CompletableFuture<Integer> saveCheckpointsAsync(Collection<Checkpoint> checkpoints) {
+        List<PendingWrite> writes = new ArrayList<>(checkpoints.size());
+        for (Checkpoint checkpoint : checkpoints) {
+            writes.add((PendingWrite) checkpoint);
+        }
+        return executor.supply(StorageExecutor.Priority.LOW, () -> {
+            try {
+                return persistAll(writes);
+            } catch (StorageException e) {
+                logger.log(Level.SEVERE, "Error while writing a checkpoint of " + writes.size() + " vaults", e);
+                return -1;
+            }
+        });
+    }
+
+    /**
+     * Copies the contents of the dirty vaults on the calling thread, then serializes and writes
+     * them in batches of {@code write_behind.max_batch_size} on the storage executor, in parallel.
+     * Batches that haven't been written by the deadline, or failed, are serialized on the calling
+     * thread and spilled to the recovery file. A batch still running when it is spilled may
+     * complete afterward, in which case replaying it writes the same contents again.
+     */
+    @Override
+    public int flushVaults(Collection<Vault> vaults, long timeoutMillis, File recoveryFile) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        // Copied on the main thread, so that they can be serialized on any thread.
+        List<VaultCopy> copies = new ArrayList<>();
+        for (Vault vault : vaults) {
+            VaultCopy copy = VaultCopy.of(vault);
+            if (copy != null) copies.add(copy);
+        }
+        if (copies.isEmpty()) return 0;
+
+        int batchSize = Math.max(1, Options.getWRITE_BEHIND_MAX_BATCH_SIZE());
+        List<List<VaultCopy>> batches = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < copies.size(); i += batchSize) {
+            List<VaultCopy> batch = copies.subList(i, Math.min(i + batchSize, copies.size()));
+            batches.add(batch);
+            results.add(executor.supply(StorageExecutor.Priority.HIGH, () -> {
+                List<PendingWrite> writes = new ArrayList<>(batch.size());
+                for (VaultCopy copy : batch) {
+                    PendingWrite write = prepareWrite(copy.vault(), copy.version(), copy.contents());
+                    if (write != null) writes.add(write);
+                }
+                if (writes.isEmpty()) return 0;
+                try {
+                    return persistAll(writes);
+                } catch (StorageException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+
+        try {
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            // Batches that didn't make it are spilled below.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int written = 0;
+        List<RecoveryFile.Entry> spilled = new ArrayList<>();
+        for (int i = 0; i < batches.size(); i++) {
+            CompletableFuture<Integer> result = results.get(i);
+            if (result.isDone() && !result.isCompletedExceptionally()) {
+                written += result.join();
+                continue;
+            }
+            if (result.isCompletedExceptionally()) {
+                logger.log(Level.SEVERE, "Error while saving a batch of vaults on shutdown", result.exceptionNow());
+            }
+            for (VaultCopy copy : batches.get(i)) {
+                PendingWrite write = prepareWrite(copy.vault(), copy.version(), copy.contents());
+                if (write == null) continue;
+                byte[] data = write.isDelta() ? Compression.compress(write.fullData()) : write.data();
+                spilled.add(new RecoveryFile.Entry(copy.vault().getOwnerUUID(), copy.vault().getVaultNumber(), data));
+            }
+        }
+        if (!spilled.isEmpty()) {
+            spill(recoveryFile.toPath(), spilled);
+        }
+        return written;
+    }
+
+    /**
+     * Writes vaults to the recovery file, after any already in it from a shutdown whose
+     * recovery file was never replayed.
+     */
+    private void spill(Path file, List<RecoveryFile.Entry> vaults) {
+        List<RecoveryFile.Entry> entries = new ArrayList<>();
+        if (Files.exists(file)) {
+            try {
+                entries.addAll(RecoveryFile.read(file));
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error while reading the existing recovery file! It is kept as " + setAside(file), e);
+            }
+        }
+        entries.addAll(vaults);
+
+        try {
+            RecoveryFile.write(file, entries);
+            logger.warning(vaults.size() + " vaults couldn't be saved in time, and were written to " + file.getFileName() + " to be saved on the next start.");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error while writing " + vaults.size() + " unsaved vaults to the recovery file! Their changes are lost.", e);
+        }
+    }
+
+    /**
+     * Writes the vaults in the recovery file to storage, then deletes it. A recovery file that
+     * can't be read or written is set aside, since replaying it once players have changed
+     * their vaults would roll those changes back.
+     */
+    @Override
+    public void replayRecovery(File recoveryFile) {
+        Path file = recoveryFile.toPath();
+        if (!Files.exists(file)) return;
+
+        try {
+            List<PendingWrite> writes = new ArrayList<>();
+            for (RecoveryFile.Entry entry : RecoveryFile.read(file)) {
+                PendingWrite write = new PendingWrite(new Vault(entry.ownerUUID(), entry.vaultNumber(), entry.data()), 0, entry.data(), null);
+                writes.add(indexesItems() ? write.withItems(countItems(entry.data())) : write);
+            }
+            if (!writes.isEmpty()) {
+                writeVaults(writes);
+                writes.forEach(this::cacheWrite);
+            }
+            Files.delete(file);
+            logger.info("Saved " + writes.size() + " vaults left unsaved by the last shutdown.");
+        } catch (IOException | StorageException e) {
+            logger.log(Level.SEVERE, "Error while saving the vaults left unsaved by the last shutdown! They are kept in " + setAside(file), e);
+        }
+    }
+
+    /**
+     * Renames a recovery file that couldn't be replayed, so that it is never replayed over newer saves.
+     *
+     * @return the name it was renamed to
+     */
+    private String setAside(Path file) {
+        Path failed = file.resolveSibling(file.getFileName() + ".failed-" + System.currentTimeMillis());
+        try {
+            Files.move(file, failed);
+            return failed.getFileName().toString();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error while renaming " + file.getFileName() + "!", e);
+            return file.getFileName().toString();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVaultAsync(UUID ownerUUID, int vaultNumber) {
+        return executor.supply(StorageExecutor.Priority.NORMAL, () -> deleteVault(ownerUUID, vaultNumber));
+    }
+
+    @Override
+    public int trainDictionary(int sampleSize) {
+        warnIfPrimaryThread("trainDictionary");
+        try {
+            List<byte[]> samples = new ArrayList<>();
+            for (byte[] stored : sampleVaults(sampleSize)) {
+                try {
+                    samples.add(Compression.decompress(stored));
+                } catch (IllegalArgumentException e) {
+                    logger.log(Level.SEVERE, "Error while decompressing vault data!", e);
+                }
+            }
+
+            byte[] dictionary = Compression.trainDictionary(samples, Compression.MAX_DICTIONARY_SIZE);
+            if (dictionary.length == 0) return -1;
+
+            int id = writeDictionary(dictionary);
+            Compression.registerDictionary(id, dictionary, true);
+            logger.info("Trained compression dictionary #" + id + " (" + dictionary.length + " bytes) from " + samples.size() + " vaults.");
+            return id;
+        } catch (StorageException e) {
+            logger.log(Level.SEVERE, "Error while training a compression dictionary!", e);
+        }
+        return -1;
+    }
+
+    @Override
+    public List<ItemMatch> searchItems(String material, String component, int offset, int limit) {
+        warnIfPrimaryThread("searchItems");
+        try {
+            return findItems(material, component, offset, limit);
+        } catch (StorageException e) {
+            logger.log(Level.SEVERE, "Error while searching vaults for " + material, e);
+            return null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<ItemMatch>> searchItemsAsync(String material, String component, int offset, int limit) {
+        return executor.supply(StorageExecutor.Priority.NORMAL, () -> searchItems(material, component, offset, limit));
+    }
+
+    @Override
+    public boolean isItemIndexComplete() {
+        return false;
+    }
+
+    @Override
+    public void resizePool(int concurrency) {
+    }
+
+    @Override
+    public void stopBackgroundTasks() {
+    }
+
+    @Override
+    public void disable() {
+        stopBackgroundTasks();
+        if (writeBehind != null) {
+            writeBehind.shutdown();
+        }
+        close();
+        if (offHeapCache != null) {
+            offHeapCache.clear();
+        }
+    }
+
+    /**
+     * Reads the stored bytes of all vaults of a player from the off-heap cache, or from
+     * storage if it isn't cached, adding them to the cache.
+     */
+    private Map<Integer, byte[]> readVaultsCached(UUID ownerUUID) throws StorageException {
+        if (offHeapCache == null) return readVaults(ownerUUID);
+
+        Map<Integer, byte[]> vaults = offHeapCache.get(ownerUUID);
+        if (vaults != null) return vaults;
+        long generation = offHeapCache.generation(ownerUUID);
+        vaults = readVaults(ownerUUID);
+        offHeapCache.fill(ownerUUID, generation, vaults);
+        return vaults;
+    }
+
+    /**
+     * Drops the owners of failed writes from the off-heap cache, as a backend may have
+     * written some of them before failing.
+     */
+    private void invalidateCached(List<PendingWrite> writes) {
+        if (offHeapCache == null) return;
+        for (PendingWrite write : writes) {
+            offHeapCache.invalidate(write.vault().getOwnerUUID());
+        }
+    }
+
+    /**
+     * Records a written vault in the off-heap cache, so that its owner's entry stays current.
+     */
+    private void cacheWrite(PendingWrite write) {
+        if (offHeapCache != null) {
+            offHeapCache.update(write.vault().getOwnerUUID(), write.vault().getVaultNumber(), write.storedData());
+        }
+    }
+
+    /**
+     * In debug mode, reports a synchronous storage call made on the server thread, which
+     * stalls every player for the length of the round trip. Saves while the plugin is
+     * being disabled are expected to run there, and aren't reported.
+     *
+     * @param operation the name of the storage method called
+     */
+    private void warnIfPrimaryThread(String operation) {
+        if (!Options.isDEBUG() || !Bukkit.isPrimaryThread() || !OtterVaults.INSTANCE().isEnabled()) return;
+        logger.log(Level.WARNING, "Synchronous " + operation + " called on the server thread", new Throwable("Called from"));
+    }
+
+    /**
+     * Serializes a dirty vault into the bytes to be written.
+     *
+     * @param vault the vault to be saved
+     * @return the pending write, or {@code null} if there is nothing to write
+     */
+    private PendingWrite prepareWrite(Vault vault) {
+        if (!vault.isDirty()) return null;
+
+        long version = vault.getVersion();
+        return prepareWrite(vault, version, vault.getInventory().getContents());
+    }
+
+    /**
+     * Serializes the given contents of a vault into the bytes to be written.
+     *
+     * @param vault the vault to be saved
+     * @param version the modification version captured before the contents were read
+     * @param contents the vault's contents
+     * @return the pending write, or {@code null} if there is nothing to write
+     */
+    private PendingWrite prepareWrite(Vault vault, long version, ItemStack[] contents) {
+        vault.cacheItemCount(contents);
+        PendingWrite write = Options.isSTORAGE_DELTAS_ENABLED()
+                ? prepareSlotWrite(vault, version, contents)
+                : prepareWholeWrite(vault, version, contents);
+        // Counted from the same contents that were serialized, so the index matches what is stored.
+        return write != null && indexesItems() ? write.withItems(ItemCounts.count(contents)) : write;
+    }
+
+    /**
+     * Serializes the whole of a dirty vault, as {@link #prepareWrite(Vault, long, ItemStack[])} does without slot deltas.
+     */
+    private PendingWrite prepareWholeWrite(Vault vault, long version, ItemStack[] contents) {
+        byte[] data = Serializers.serializeInv(contents);
+        if (data == null) return null;
+
+        Serializers.ContentHash hash = Serializers.contentHash(data);
+        if (vault.matchesPersisted(hash)) {
+            // Modified, but the contents ended up identical to what is stored.
+            vault.markPersisted(version, hash, null, null);
+            return null;
+        }
+        return new PendingWrite(vault, version, Compression.compress(data), hash);
+    }
+
+    /**
+     * Serializes only the slots of a dirty vault modified since it was last persisted, and
+     * compares each against its persisted bytes. Falls back to serializing the whole vault
+     * when its persisted slots aren't known.
+     *
+     * @param vault the vault to be saved
+     * @param version the modification version captured before the contents were read
+     * @param contents the vault's contents
+     * @return the pending write, or {@code null} if there is nothing to write
+     */
+    private PendingWrite prepareSlotWrite(Vault vault, long version, ItemStack[] contents) {
+        Vault.PersistedSlots persisted = vault.getPersistedSlots();
+        boolean delta = persisted != null && persisted.slots().length == contents.length && supportsDeltas();
+
+        byte[][] serialized = delta
+                ? Serializers.serializeSlots(contents, slot -> vault.isSlotModifiedSince(slot, persisted.version()))
+                : Serializers.serializeSlots(contents, slot -> true);
+        if (serialized == null) return null;
+
+        byte[][] slots = delta ? persisted.slots().clone() : serialized;
+        byte[][] changes = new byte[contents.length][];
+        boolean changed = !delta;
+        if (delta) {
+            for (int i = 0; i < contents.length; i++) {
+                if (!vault.isSlotModifiedSince(i, persisted.version()) || Arrays.equals(serialized[i], slots[i])) continue;
+                slots[i] = serialized[i];
+                changes[i] = serialized[i] == null ? new byte[0] : serialized[i];
+                changed = true;
+            }
+        }
+
+        byte[] full = Serializers.pack(slots);
+        Serializers.ContentHash hash = Serializers.contentHash(full);
+        if (!changed || vault.matchesPersisted(hash)) {
+            vault.markPersisted(version, hash, null, slots);
+            return null;
+        }
+        return delta
+                ? new PendingWrite(vault, version, Compression.compress(Serializers.packDelta(changes)), hash, full, slots)
+                : new PendingWrite(vault, version, Compression.compress(full), hash, null, slots);
+    }
+
+    /**
+     * Applies the deltas stored after a vault's snapshot, in order, into the packed but
+     * uncompressed bytes of the whole vault.
+     *
+     * @param snapshot the stored bytes of the snapshot, possibly compressed
+     * @param deltas the stored bytes of each delta, possibly compressed
+     * @return the merged vault, or the snapshot itself if there are no deltas
+     * @throws IllegalArgumentException if the snapshot or a delta can't be decoded
+     */
+    protected static byte[] applyDeltas(byte[] snapshot, List<byte[]> deltas) {
+        if (deltas.isEmpty()) return snapshot;
+
+        byte[][] slots = snapshot == null ? new byte[Vault.SIZE][] : Serializers.unpack(Compression.decompress(snapshot));
+        for (byte[] delta : deltas) {
+            Serializers.applyDelta(slots, Compression.decompress(delta));
+        }
+        return Serializers.pack(slots);
+    }
+
+    /**
+     * Counts the items in a vault's stored bytes, for writes whose contents aren't at hand.
+     *
+     * @param stored the stored bytes, possibly compressed
+     * @return the item counts, which are empty if the bytes can't be read
+     */
+    private Map<ItemCounts.Key, Integer> countItems(byte[] stored) {
+        try {
+            ItemStack[] contents = Serializers.deserializeInv(Compression.decompress(stored));
+            return contents == null ? Map.of() : ItemCounts.count(contents);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Error while decompressing vault data!", e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * Writes a single serialized vault, and marks it as persisted. Skipped if a newer
+     * version of the vault was persisted while this one was waiting to be written.
+     *
+     * @param write the vault and its compressed bytes
+     */
+    void persist(PendingWrite write) throws StorageException {
+        write.vault().lockWrites();
+        try {
+            if (write.version() < write.vault().getPersistedVersion()) return;
+            write(write);
+        } finally {
+            write.vault().unlockWrites();
+        }
+    }
+
+    private void write(PendingWrite write) throws StorageException {
+        long startTime = System.nanoTime();
+        try {
+            if (write.items() != null) {
+                writeVaults(List.of(write));
+            } else if (write.isDelta()) {
+                writeVaultDelta(write.vault().getOwnerUUID(), write.vault().getVaultNumber(), write.data(), write.fullData());
+            } else {
+                writeVault(write.vault().getOwnerUUID(), write.vault().getVaultNumber(), write.data());
+            }
+        } catch (StorageException e) {
+            invalidateCached(List.of(write));
+            throw e;
+        } finally {
+            VaultMetrics.getSAVE_LATENCY().recordSince(startTime);
+        }
+        VaultMetrics.recordBytesWritten(write.data().length);
+        write.vault().markPersisted(write.version(), write.hash(), write.storedData(), write.slots());
+        cacheWrite(write);
+    }
+
+    /**
+     * Writes serialized vaults atomically, and marks them as persisted once written. Vaults of
+     * which a newer version was persisted while they were waiting to be written are skipped.
+     * <p>
+     * Each vault is locked against other writes of it until the transaction ends, so that an
+     * older save, such as a checkpoint, can never land after a newer one and roll it back.
+     * Vaults are locked in key order, so that batches sharing vaults can't deadlock.
+     *
+     * @param writes the vaults and their compressed bytes
+     * @return the number of vaults written
+     */
+    int persistAll(List<PendingWrite> writes) throws StorageException {
+        List<PendingWrite> locked = new ArrayList<>(writes);
+        locked.sort(WRITE_ORDER);
+        for (PendingWrite write : locked) {
+            write.vault().lockWrites();
+        }
+        try {
+            List<PendingWrite> current = new ArrayList<>(locked.size());
+            for (PendingWrite write : locked) {
+                if (write.version() >= write.vault().getPersistedVersion()) current.add(write);
+            }
+            if (current.isEmpty()) return 0;
+
+            long startTime = System.nanoTime();
+            try {
+                writeVaults(current);
+            } catch (StorageException e) {
+                invalidateCached(current);
+                throw e;
+            } finally {
+                VaultMetrics.getSAVE_LATENCY().recordSince(startTime);
+            }
+
+            for (PendingWrite write : current) {
+                VaultMetrics.recordBytesWritten(write.data().length);
+                write.vault().markPersisted(write.version(), write.hash(), write.storedData(), write.slots());
+                cacheWrite(write);
+            }
+            return current.size();
+        } finally {
+            for (PendingWrite write : locked) {
+                write.vault().unlockWrites();
+            }
+        }
+    }
+
+    /**
+     * A serialized vault waiting to be written. A delta write holds only the changed slots in
+     * {@code data}, along with the whole vault in {@code fullData} for backends to consolidate into.
+     *
+     * @param data the compressed bytes to write
+     * @param fullData the whole vault, packed but uncompressed, for a delta write; otherwise {@code null}
+     * @param slots the serialized item of each slot, if slot deltas are enabled; otherwise {@code null}
+     * @param items the items in the vault, if the backend {@link #indexesItems() indexes items}; otherwise {@code null}
+     */
+    protected record PendingWrite(Vault vault, long version, byte[] data, Serializers.ContentHash hash, byte[] fullData, byte[][] slots,
+                                  Map<ItemCounts.Key, Integer> items) implements Checkpoint {
+        PendingWrite(Vault vault, long version, byte[] data, Serializers.ContentHash hash) {
+            this(vault, version, data, hash, null, null);
+        }
+
+        PendingWrite(Vault vault, long version, byte[] data, Serializers.ContentHash hash, byte[] fullData, byte[][] slots) {
+            this(vault, version, data, hash, fullData, slots, null);
+        }
+
+        PendingWrite withItems(Map<ItemCounts.Key, Integer> items) {
+            return new PendingWrite(vault, version, data, hash, fullData, slots, items);
+        }
+
+        boolean isDelta() {
+            return fullData != null;
+        }
+
+        /**
+         * @return the bytes the vault is stored as once written, which for a delta write are
+         *         the whole vault uncompressed, since it is read back by merging its deltas
+         */
+        byte[] storedData() {
+            return isDelta() ? fullData : data;
+        }
+    }
+
+    /**
+     * A vault's contents, copied on the main thread so they can be serialized on any thread.
+     */
+    record VaultCopy(Vault vault, long version, ItemStack[] contents) {
+
+        /**
+         * Copies the current contents of a vault, cloning each item. Must be called on the main thread.
+         *
+         * @param vault the vault to be copied
+         * @return the copy, or {@code null} if the vault has no unsaved modifications
+         */
+        static VaultCopy of(Vault vault) {
+            if (!vault.isDirty()) return null;
+
+            long version = vault.getVersion();
+            ItemStack[] contents = vault.getInventory().getContents();
+            for (int i = 0; i < contents.length; i++) {
+                if (contents[i] != null) contents[i] = contents[i].clone();
+            }
+            return new VaultCopy(vault, version, contents);
+        }
+    }
+
+    @FunctionalInterface
+    protected interface VaultRowConsumer {
+        void accept(UUID ownerUUID, int vaultNumber, byte[] data);
+    }
+
+}
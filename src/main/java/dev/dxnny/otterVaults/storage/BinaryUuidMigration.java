@@ -0,0 +1,257 @@
+package dev.dxnny.otterVaults.storage;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schema version 1: keys vaults on the database's native UUID type instead of a 36 character
+ * string, and records when each vault was last written and how large it is.
+ * <p>
+ * The old table is renamed to {@code vaults_legacy} on startup, and its rows are moved over in
+ * the background a chunk at a time. Until then, {@link JdbcVaultStorage} reads both tables,
+ * preferring the new one, and removes a vault's legacy row whenever it writes the vault.
+ * Rows whose owner isn't a valid UUID are moved to {@code vaults_invalid} instead, for an
+ * admin to inspect, so they can't hold back the migration.
+ */
+public class BinaryUuidMigration implements SchemaMigration {
+    public static final int VERSION = 1;
+    private static final int CHUNK_SIZE = 500;
+    private static final long CHUNK_PAUSE_MS = 50;
+    // Lets reads that started before the migration was recorded finish before their table goes away.
+    private static final long DROP_GRACE_MS = 10_000;
+
+    @Override
+    public int version() {
+        return VERSION;
+    }
+
+    @Override
+    public String description() {
+        return "Binary UUID keys, last_modified and byte_size columns";
+    }
+
+    @Override
+    public Job apply(Connection conn, SqlDialect dialect, DataSource dataSource, Logger logger) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (tableExists(conn, "vaults") && !columnExists(conn, "vaults", "byte_size")) {
+                stmt.executeUpdate("ALTER TABLE vaults RENAME TO vaults_legacy");
+            }
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vaults (" +
+                    "player_uuid " + dialect.getUuidType() + " NOT NULL, " +
+                    "vault_number INT NOT NULL, " +
+                    "data " + dialect.getBlobType() + ", " +
+                    "last_modified BIGINT NOT NULL, " +
+                    "byte_size INT NOT NULL, " +
+                    "PRIMARY KEY (player_uuid, vault_number)" +
+                    ")"
+            );
+        }
+        if (!tableExists(conn, "vaults_legacy")) return null;
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vaults_invalid (" +
+                    "player_uuid VARCHAR(36) NOT NULL, " +
+                    "vault_number INT NOT NULL, " +
+                    "data " + dialect.getBlobType() + ", " +
+                    "PRIMARY KEY (player_uuid, vault_number)" +
+                    ")"
+            );
+        }
+        return new Copier(dataSource, dialect, logger);
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        // Unquoted names are stored upper case by H2, and lower case by the others.
+        for (String name : List.of(table, table.toUpperCase())) {
+            try (ResultSet rs = meta.getTables(conn.getCatalog(), conn.getSchema(), name, new String[]{"TABLE"})) {
+                if (rs.next()) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String name : List.of(table, table.toUpperCase())) {
+            try (ResultSet rs = meta.getColumns(conn.getCatalog(), conn.getSchema(), name, null)) {
+                while (rs.next()) {
+                    if (rs.getString("COLUMN_NAME").equalsIgnoreCase(column)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves rows from {@code vaults_legacy} into {@code vaults}, in key order, a chunk
+     * at a time, with a pause between chunks so the job never competes with player saves.
+     */
+    private static class Copier implements Job {
+        private final DataSource dataSource;
+        private final SqlDialect dialect;
+        private final Logger logger;
+        private volatile boolean running = true;
+        private int quarantined;
+
+        private Copier(DataSource dataSource, SqlDialect dialect, Logger logger) {
+            this.dataSource = dataSource;
+            this.dialect = dialect;
+            this.logger = logger;
+        }
+
+        @Override
+        public boolean run() {
+            String lastUUID = "";
+            int lastNumber = -1;
+            int moved = 0;
+
+            try {
+                while (running) {
+                    List<RowKey> rows = new ArrayList<>();
+                    try (Connection conn = dataSource.getConnection();
+                         PreparedStatement ps = conn.prepareStatement("SELECT player_uuid, vault_number FROM vaults_legacy " +
+                                 "WHERE player_uuid > ? OR (player_uuid = ? AND vault_number > ?) " +
+                                 "ORDER BY player_uuid, vault_number LIMIT ?")) {
+                        ps.setString(1, lastUUID);
+                        ps.setString(2, lastUUID);
+                        ps.setInt(3, lastNumber);
+                        ps.setInt(4, CHUNK_SIZE);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                lastUUID = rs.getString("player_uuid");
+                                lastNumber = rs.getInt("vault_number");
+                                rows.add(new RowKey(lastUUID, lastNumber));
+                            }
+                        }
+                    }
+
+                    moved += moveChunk(rows);
+                    if (rows.size() < CHUNK_SIZE) break;
+
+                    Thread.sleep(CHUNK_PAUSE_MS);
+                }
+                if (!running) return false;
+
+                try (Connection conn = dataSource.getConnection();
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM vaults_legacy")) {
+                    rs.next();
+                    int remaining = rs.getInt(1);
+                    if (remaining > 0) {
+                        logger.warning(remaining + " vaults were left in the vaults_legacy table, and will be moved on the next startup.");
+                        return false;
+                    }
+                }
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Error while migrating vaults to binary UUID keys!", e);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            logger.info("Moved " + moved + " vaults to binary UUID keys.");
+            if (quarantined > 0) {
+                logger.warning(quarantined + " vaults with invalid owner UUIDs were moved to the vaults_invalid table.");
+            }
+            return true;
+        }
+
+        /**
+         * Moves the given rows in a single transaction. Each row is re-read under a row lock
+         * (or, on SQLite, the database write lock). Saves remove the legacy row before writing
+         * the new one, so a row that is gone by now has already been replaced by a newer save.
+         * Rows whose owner can't be parsed are moved to {@code vaults_invalid}, and not counted.
+         *
+         * @param rows the keys of rows in the legacy table when scanned
+         * @return the number of rows moved
+         */
+        private int moveChunk(List<RowKey> rows) throws SQLException {
+            int moved = 0;
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement select = conn.prepareStatement("SELECT data FROM vaults_legacy WHERE player_uuid = ? AND vault_number = ?" + dialect.getLockClause());
+                     PreparedStatement upsert = conn.prepareStatement(dialect.getUpsertVaultSql());
+                     PreparedStatement quarantine = conn.prepareStatement("INSERT INTO vaults_invalid (player_uuid, vault_number, data) VALUES (?, ?, ?)");
+                     PreparedStatement delete = conn.prepareStatement("DELETE FROM vaults_legacy WHERE player_uuid = ? AND vault_number = ?")) {
+                    long now = System.currentTimeMillis();
+                    List<RowKey> invalid = new ArrayList<>();
+                    for (RowKey row : rows) {
+                        select.setString(1, row.uuid());
+                        select.setInt(2, row.vaultNumber());
+                        byte[] data;
+                        try (ResultSet rs = select.executeQuery()) {
+                            if (!rs.next()) continue;
+                            data = rs.getBytes("data");
+                        }
+                        delete.setString(1, row.uuid());
+                        delete.setInt(2, row.vaultNumber());
+
+                        UUID uuid;
+                        try {
+                            uuid = UUID.fromString(row.uuid());
+                        } catch (IllegalArgumentException e) {
+                            quarantine.setString(1, row.uuid());
+                            quarantine.setInt(2, row.vaultNumber());
+                            quarantine.setBytes(3, data);
+                            quarantine.executeUpdate();
+                            delete.executeUpdate();
+                            invalid.add(row);
+                            continue;
+                        }
+
+                        dialect.setUuid(upsert, 1, uuid);
+                        upsert.setInt(2, row.vaultNumber());
+                        upsert.setBytes(3, data);
+                        upsert.setLong(4, now);
+                        upsert.setInt(5, data == null ? 0 : data.length);
+                        upsert.executeUpdate();
+                        delete.executeUpdate();
+                        moved++;
+                    }
+                    conn.commit();
+
+                    // Only reported once committed, so a retried chunk doesn't report its rows twice.
+                    for (RowKey row : invalid) {
+                        logger.warning("Moved vault " + row.vaultNumber() + " of invalid owner UUID '" + row.uuid() + "' to the vaults_invalid table.");
+                    }
+                    quarantined += invalid.size();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            return moved;
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+
+        @Override
+        public long finishDelayMillis() {
+            return DROP_GRACE_MS;
+        }
+
+        @Override
+        public void finish(Connection conn) throws SQLException {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DROP TABLE vaults_legacy");
+            }
+        }
+
+        private record RowKey(String uuid, int vaultNumber) {
+        }
+
+    }
+
+}
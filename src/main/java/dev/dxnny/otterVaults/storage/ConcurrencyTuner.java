@@ -0,0 +1,129 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.metrics.LatencyHistogram;
+import dev.dxnny.otterVaults.metrics.VaultMetrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Adjusts the storage executor's concurrency, and the connection pool with it, to the load the
+ * backend handles best. Run periodically, it compares each interval's throughput and save latency
+ * with the previous one, hill climbing towards the lowest concurrency that keeps tasks from
+ * queueing: embedded databases serialize writes, so extra writers only contend for their lock,
+ * while database servers keep scaling up to their core count.
+ * <p>
+ * It only adjusts while tasks are waiting to run, when throughput is bounded by the backend rather
+ * than by how much work is submitted: it steps up, unless the last step up cost throughput, in
+ * which case it steps back. Intervals without a backlog, or with too little work to measure,
+ * change nothing, so a drop in demand doesn't lower the concurrency. Background jobs, such as
+ * migrations, run outside of the limit, and aren't counted.
+ */
+public class ConcurrencyTuner implements Runnable {
+    // The fewest tasks an interval must complete for its throughput to be compared.
+    private static final long MIN_SAMPLE = 20;
+    // Average queue wait above which tasks are considered to be waiting for a permit.
+    private static final long SATURATED_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final StorageExecutor executor;
+    private final IntConsumer poolResizer;
+    private final Logger logger;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+
+    private long lastSampleNanos = System.nanoTime();
+    private long lastCompleted;
+    private long lastWaitNanos;
+    private long lastSaveCount;
+    private long lastSaveNanos;
+    private double lastThroughput;
+    // The change made at the end of the previous interval; 0 if none.
+    private int lastStep;
+
+    /**
+     * Constructs a tuner, and lowers the executor to the minimum concurrency to start from.
+     *
+     * @param executor the executor whose concurrency is tuned
+     * @param poolResizer resizes the connection pool to match a new concurrency
+     * @param logger the logger decisions are reported to
+     * @param minConcurrency the lowest concurrency to use
+     * @param maxConcurrency the highest concurrency to use
+     */
+    public ConcurrencyTuner(StorageExecutor executor, IntConsumer poolResizer, Logger logger, int minConcurrency, int maxConcurrency) {
+        this.executor = executor;
+        this.poolResizer = poolResizer;
+        this.logger = logger;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.minConcurrency = Math.max(1, Math.min(minConcurrency, this.maxConcurrency));
+        this.lastCompleted = executor.getCompletedCount();
+        this.lastWaitNanos = executor.getTotalWaitNanos();
+        LatencyHistogram.Snapshot saves = VaultMetrics.getSAVE_LATENCY().snapshot();
+        this.lastSaveCount = saves.count();
+        this.lastSaveNanos = saves.totalNanos();
+
+        apply(this.minConcurrency);
+        logger.info("Storage concurrency is tuned automatically between " + this.minConcurrency + " and " + this.maxConcurrency + ", starting at " + this.minConcurrency + ".");
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        long completed = executor.getCompletedCount();
+        long waitNanos = executor.getTotalWaitNanos();
+        LatencyHistogram.Snapshot saves = VaultMetrics.getSAVE_LATENCY().snapshot();
+
+        long tasks = completed - lastCompleted;
+        double seconds = Math.max(1e-3, (now - lastSampleNanos) / 1e9);
+        double throughput = tasks / seconds;
+        long averageWait = tasks == 0 ? 0 : (waitNanos - lastWaitNanos) / tasks;
+        long saveCount = saves.count() - lastSaveCount;
+        double saveMillis = saveCount == 0 ? 0 : (saves.totalNanos() - lastSaveNanos) / 1e6 / saveCount;
+
+        lastSampleNanos = now;
+        lastCompleted = completed;
+        lastWaitNanos = waitNanos;
+        lastSaveCount = saves.count();
+        lastSaveNanos = saves.totalNanos();
+        boolean backlog = averageWait > SATURATED_WAIT_NANOS || executor.getQueueDepth() > 0;
+        if (tasks < MIN_SAMPLE || !backlog) {
+            // Without a backlog, throughput follows demand, so it isn't kept to compare the next interval with.
+            lastStep = 0;
+            lastThroughput = 0;
+            return;
+        }
+
+        int current = executor.getConcurrencyLimit();
+        int step = 0;
+        String reason = null;
+        if (lastStep > 0 && throughput < lastThroughput * 0.95) {
+            step = -lastStep;
+            reason = "the last increase lowered throughput";
+        } else if (current < maxConcurrency) {
+            step = Math.max(1, current / 4);
+            reason = "tasks are waiting to run";
+        }
+        lastThroughput = throughput;
+
+        int next = Math.max(minConcurrency, Math.min(current + step, maxConcurrency));
+        lastStep = next - current;
+        if (lastStep == 0) return;
+
+        apply(next);
+        logger.info(String.format(Locale.ROOT, "Storage concurrency %d -> %d, as %s (%.1f tasks/s, %.2fms per save, %.2fms queue wait).",
+                current, next, reason, throughput, saveMillis, averageWait / 1e6));
+    }
+
+    private void apply(int concurrency) {
+        // The pool grows first and shrinks last, so running tasks always find a connection.
+        if (concurrency > executor.getConcurrencyLimit()) {
+            poolResizer.accept(concurrency);
+            executor.setConcurrencyLimit(concurrency);
+        } else {
+            executor.setConcurrencyLimit(concurrency);
+            poolResizer.accept(concurrency);
+        }
+    }
+
+}
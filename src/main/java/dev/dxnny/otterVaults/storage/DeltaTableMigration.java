@@ -0,0 +1,42 @@
+package dev.dxnny.otterVaults.storage;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+/**
+ * Schema version 2: adds the {@code vault_deltas} table, holding the slots that changed in each
+ * save since a vault's last full snapshot in {@code vaults}. Deltas are numbered from 1 per vault,
+ * and a vault is read by applying its deltas to the snapshot in order.
+ */
+public class DeltaTableMigration implements SchemaMigration {
+    public static final int VERSION = 2;
+
+    @Override
+    public int version() {
+        return VERSION;
+    }
+
+    @Override
+    public String description() {
+        return "Per-slot vault deltas";
+    }
+
+    @Override
+    public Job apply(Connection conn, SqlDialect dialect, DataSource dataSource, Logger logger) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vault_deltas (" +
+                    "player_uuid " + dialect.getUuidType() + " NOT NULL, " +
+                    "vault_number INT NOT NULL, " +
+                    "seq INT NOT NULL, " +
+                    "data " + dialect.getBlobType() + ", " +
+                    "PRIMARY KEY (player_uuid, vault_number, seq)" +
+                    ")"
+            );
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,253 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.ItemCounts;
+import dev.dxnny.otterVaults.util.Serializers;
+import org.bukkit.inventory.ItemStack;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schema version 3: adds the {@code vault_items} table, an index of the items in each vault by
+ * material, and by material and enchantment, so that a search across every vault only reads the
+ * rows of the item searched for.
+ * <p>
+ * Once the table exists, every save replaces its vault's rows in the same transaction. Vaults
+ * stored before then are indexed in the background a chunk at a time; the version is recorded,
+ * and search results are complete, once every vault has been visited.
+ */
+public class ItemIndexMigration implements SchemaMigration {
+    public static final int VERSION = 3;
+    private static final int CHUNK_SIZE = 200;
+    private static final long CHUNK_PAUSE_MS = 50;
+    // Attempts at a chunk that keeps colliding with saves, such as SQLite's busy errors, before giving up.
+    private static final int CHUNK_ATTEMPTS = 3;
+
+    @Override
+    public int version() {
+        return VERSION;
+    }
+
+    @Override
+    public String description() {
+        return "Item index for searching vaults";
+    }
+
+    @Override
+    public Job apply(Connection conn, SqlDialect dialect, DataSource dataSource, Logger logger) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vault_items (" +
+                    "player_uuid " + dialect.getUuidType() + " NOT NULL, " +
+                    "vault_number INT NOT NULL, " +
+                    "material VARCHAR(64) NOT NULL, " +
+                    "component VARCHAR(128) NOT NULL, " +
+                    "amount INT NOT NULL, " +
+                    "PRIMARY KEY (player_uuid, vault_number, material, component)" +
+                    ")"
+            );
+            // Serves searches in the order results are listed, largest amounts first.
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS vault_items_search ON vault_items (material, component, amount)");
+        }
+        return new Builder(dataSource, dialect, logger);
+    }
+
+    /**
+     * Replaces the index rows of the given vaults. A vault listed more than once is indexed as its last entry.
+     *
+     * @param conn the connection to write on, in the caller's transaction
+     * @param dialect the database being written to
+     * @param vaults the vaults with their item counts
+     */
+    static void writeItems(Connection conn, SqlDialect dialect, List<IndexedVault> vaults) throws SQLException {
+        Map<VaultKey, Map<ItemCounts.Key, Integer>> latest = new LinkedHashMap<>();
+        for (IndexedVault vault : vaults) {
+            latest.put(new VaultKey(vault.ownerUUID(), vault.vaultNumber()), vault.items());
+        }
+
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM vault_items WHERE player_uuid = ? AND vault_number = ?");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO vault_items (player_uuid, vault_number, material, component, amount) VALUES (?, ?, ?, ?, ?)")) {
+            boolean inserts = false;
+            for (Map.Entry<VaultKey, Map<ItemCounts.Key, Integer>> vault : latest.entrySet()) {
+                dialect.setUuid(delete, 1, vault.getKey().ownerUUID());
+                delete.setInt(2, vault.getKey().vaultNumber());
+                delete.addBatch();
+
+                for (Map.Entry<ItemCounts.Key, Integer> item : vault.getValue().entrySet()) {
+                    dialect.setUuid(insert, 1, vault.getKey().ownerUUID());
+                    insert.setInt(2, vault.getKey().vaultNumber());
+                    insert.setString(3, item.getKey().material());
+                    insert.setString(4, item.getKey().component());
+                    insert.setInt(5, item.getValue());
+                    insert.addBatch();
+                    inserts = true;
+                }
+            }
+            delete.executeBatch();
+            if (inserts) insert.executeBatch();
+        }
+    }
+
+    /**
+     * A vault's item counts, to be written to the index.
+     */
+    record IndexedVault(UUID ownerUUID, int vaultNumber, Map<ItemCounts.Key, Integer> items) {
+    }
+
+    private record VaultKey(UUID ownerUUID, int vaultNumber) {
+    }
+
+    /**
+     * Indexes every stored vault, in key order, a chunk at a time, with a pause between chunks
+     * so the job never competes with player saves.
+     */
+    private static class Builder implements Job {
+        private final DataSource dataSource;
+        private final SqlDialect dialect;
+        private final Logger logger;
+        private volatile boolean running = true;
+
+        private Builder(DataSource dataSource, SqlDialect dialect, Logger logger) {
+            this.dataSource = dataSource;
+            this.dialect = dialect;
+            this.logger = logger;
+        }
+
+        @Override
+        public boolean run() {
+            UUID lastUUID = new UUID(0L, 0L);
+            int lastNumber = -1;
+            int indexed = 0;
+
+            try {
+                while (running) {
+                    List<VaultKey> vaults = new ArrayList<>();
+                    try (Connection conn = dataSource.getConnection();
+                         PreparedStatement ps = conn.prepareStatement("SELECT player_uuid, vault_number FROM vaults " +
+                                 "WHERE player_uuid > ? OR (player_uuid = ? AND vault_number > ?) " +
+                                 "ORDER BY player_uuid, vault_number LIMIT ?")) {
+                        dialect.setUuid(ps, 1, lastUUID);
+                        dialect.setUuid(ps, 2, lastUUID);
+                        ps.setInt(3, lastNumber);
+                        ps.setInt(4, CHUNK_SIZE);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                lastUUID = dialect.getUuid(rs, "player_uuid");
+                                lastNumber = rs.getInt("vault_number");
+                                vaults.add(new VaultKey(lastUUID, lastNumber));
+                            }
+                        }
+                    }
+
+                    indexed += indexChunkWithRetries(vaults);
+                    if (vaults.size() < CHUNK_SIZE) break;
+
+                    Thread.sleep(CHUNK_PAUSE_MS);
+                }
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Error while building the vault item index!", e);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (!running) return false;
+
+            logger.info("Indexed the items of " + indexed + " vaults.");
+            return true;
+        }
+
+        private int indexChunkWithRetries(List<VaultKey> vaults) throws SQLException, InterruptedException {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return indexChunk(vaults);
+                } catch (SQLException e) {
+                    if (attempt >= CHUNK_ATTEMPTS) throw e;
+                    OtterVaults.debug("Retrying a chunk of the item index after: " + e.getMessage());
+                    Thread.sleep(CHUNK_PAUSE_MS * attempt);
+                }
+            }
+        }
+
+        /**
+         * Indexes the given vaults in a single transaction. Each vault is re-read under a row lock
+         * (or, on SQLite, the database write lock), and saves lock the same row before indexing
+         * it, so a save that landed after the scan is never replaced with older counts.
+         *
+         * @param vaults the keys of vaults stored when scanned
+         * @return the number of vaults indexed
+         */
+        private int indexChunk(List<VaultKey> vaults) throws SQLException {
+            List<IndexedVault> indexed = new ArrayList<>(vaults.size());
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement select = conn.prepareStatement("SELECT data FROM vaults WHERE player_uuid = ? AND vault_number = ?" + dialect.getLockClause());
+                     PreparedStatement deltas = conn.prepareStatement("SELECT data FROM vault_deltas WHERE player_uuid = ? AND vault_number = ? ORDER BY seq")) {
+                    for (VaultKey vault : vaults) {
+                        dialect.setUuid(select, 1, vault.ownerUUID());
+                        select.setInt(2, vault.vaultNumber());
+                        byte[] snapshot;
+                        boolean found;
+                        try (ResultSet rs = select.executeQuery()) {
+                            found = rs.next();
+                            snapshot = found ? rs.getBytes("data") : null;
+                        }
+
+                        List<byte[]> changes = new ArrayList<>();
+                        if (found) {
+                            dialect.setUuid(deltas, 1, vault.ownerUUID());
+                            deltas.setInt(2, vault.vaultNumber());
+                            try (ResultSet rs = deltas.executeQuery()) {
+                                while (rs.next()) {
+                                    changes.add(rs.getBytes("data"));
+                                }
+                            }
+                        }
+                        // A vault removed since the scan is left with no rows.
+                        indexed.add(new IndexedVault(vault.ownerUUID(), vault.vaultNumber(), found ? count(vault, snapshot, changes) : Map.of()));
+                    }
+                    writeItems(conn, dialect, indexed);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            return indexed.size();
+        }
+
+        private Map<ItemCounts.Key, Integer> count(VaultKey vault, byte[] snapshot, List<byte[]> deltas) {
+            try {
+                byte[] data = AbstractVaultStorage.applyDeltas(snapshot, deltas);
+                if (data == null) return Map.of();
+                ItemStack[] contents = Serializers.deserializeInv(Compression.decompress(data));
+                // Left unindexed if it can't be read; already reported while deserializing.
+                return contents == null ? Map.of() : ItemCounts.count(contents);
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.SEVERE, "Error while indexing vault " + vault.vaultNumber() + " for " + vault.ownerUUID(), e);
+                return Map.of();
+            }
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+
+    }
+
+}
@@ -0,0 +1,664 @@
+package dev.dxnny.otterVaults.storage;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import dev.dxnny.otterVaults.config.Options;
+import dev.dxnny.otterVaults.metrics.HikariMetricsTracker;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.ItemCounts;
+
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores vaults in a SQL database through a HikariCP connection pool.
+ * H2 and SQLite are embedded in the data folder; MariaDB and PostgreSQL
+ * connect to the server configured under {@code storage.database}.
+ */
+public class JdbcVaultStorage extends AbstractVaultStorage {
+    // Connections beyond the executor's concurrency, for synchronous calls and background jobs made outside of it.
+    private static final int POOL_HEADROOM = 2;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    private final SqlDialect dialect;
+    private final HikariDataSource dataSource;
+    private final SchemaMigrator schema;
+    private LegacyBlobMigrator legacyMigrator;
+    // Whether vault_deltas may hold rows, even if deltas have since been disabled.
+    private volatile boolean storedDeltas;
+
+    /**
+     * Constructs a storage backend for the given database, configured from {@link Options}.
+     *
+     * @param dialect the database to connect to
+     * @param dataFolder the folder embedded databases are stored in
+     * @param logger the logger used to report storage errors
+     * @param executor the executor asynchronous saves and background jobs are run on
+     */
+    public JdbcVaultStorage(SqlDialect dialect, File dataFolder, Logger logger, StorageExecutor executor) {
+        super(logger, executor);
+        this.dialect = dialect;
+
+        HikariConfig config = new HikariConfig();
+        // Drivers are loaded by the plugin's library loader, so they must be named explicitly.
+        config.setDriverClassName(dialect.getDriverClassName());
+        switch (dialect) {
+            case H2 -> {
+                // Parsed statements are cached per session, so repeated queries skip the planner.
+                config.setJdbcUrl("jdbc:h2:./" + dataFolder + "/data;AUTO_SERVER=TRUE;QUERY_CACHE_SIZE=" + STATEMENT_CACHE_SIZE);
+                config.setUsername("sa");
+                config.setPassword("");
+            }
+            case SQLITE -> {
+                config.setJdbcUrl("jdbc:sqlite:" + dataFolder + "/data.db");
+                // WAL lets reads run alongside the single writer SQLite allows.
+                config.addDataSourceProperty("journal_mode", "WAL");
+                config.addDataSourceProperty("busy_timeout", "15000");
+            }
+            case MARIADB, POSTGRESQL -> {
+                String scheme = dialect == SqlDialect.MARIADB ? "mariadb" : "postgresql";
+                config.setJdbcUrl("jdbc:" + scheme + "://" + Options.getSTORAGE_HOST() + ":" + Options.getSTORAGE_PORT() + "/" + Options.getSTORAGE_DATABASE());
+                config.setUsername(Options.getSTORAGE_USERNAME());
+                config.setPassword(Options.getSTORAGE_PASSWORD());
+                // Prepare statements on the server once per connection, and reuse them from the driver's cache.
+                if (dialect == SqlDialect.MARIADB) {
+                    config.addDataSourceProperty("useServerPrepStmts", "true");
+                    config.addDataSourceProperty("cachePrepStmts", "true");
+                    config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(STATEMENT_CACHE_SIZE));
+                } else {
+                    config.addDataSourceProperty("prepareThreshold", "1");
+                    config.addDataSourceProperty("preparedStatementCacheQueries", String.valueOf(STATEMENT_CACHE_SIZE));
+                }
+            }
+        }
+        config.setMaximumPoolSize(Options.getSTORAGE_POOL_SIZE() + POOL_HEADROOM);
+        if (Options.isSTORAGE_POOL_AUTO()) {
+            config.setMinimumIdle(Options.getSTORAGE_POOL_MIN_SIZE());
+        }
+        config.setConnectionTimeout(15000);
+        config.setAutoCommit(true);
+        config.setMetricsTrackerFactory(HikariMetricsTracker.factory());
+
+        this.dataSource = new HikariDataSource(config);
+        this.schema = new SchemaMigrator(dataSource, dialect, logger, executor);
+        initialize();
+        loadDictionaries();
+    }
+
+    /**
+     * Initializes the database for storing vaults, and brings its schema up to date.
+     * The table structure includes:
+     * `player_uuid`: The player's UUID, in the database's native UUID type,
+     * `vault_number`: An integer representing the vault index,
+     * `data`: A BLOB storing the serialized vault data,
+     * `last_modified`: When the vault was last written, in epoch milliseconds, and
+     * `byte_size`: The size of the stored data, in bytes.
+     * A key comprised of `player_uuid` and `vault_number` serves as the primary
+     * key to identify each vault.
+     * The slots changed by saves since a vault was last written in full are stored
+     * in the `vault_deltas` table, see {@link DeltaTableMigration}.
+     * The items in each vault are indexed in the `vault_items` table, see {@link ItemIndexMigration}.
+     * Trained compression dictionaries are stored in the `vault_dictionaries` table.
+     */
+    private void initialize() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vault_dictionaries (" +
+                    "id INT NOT NULL PRIMARY KEY, " +
+                    "data " + dialect.getBlobType() + " NOT NULL" +
+                    ")"
+            );
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error while setting up database connection!", e);
+        }
+        try {
+            schema.migrate();
+            if (supportsDeltas()) {
+                try (Connection conn = dataSource.getConnection();
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT 1 FROM vault_deltas LIMIT 1")) {
+                    storedDeltas = rs.next();
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error while migrating the database schema!", e);
+        }
+    }
+
+    @Override
+    protected boolean supportsDeltas() {
+        return schema.isApplied(DeltaTableMigration.VERSION);
+    }
+
+    /**
+     * Counts items as soon as the index table exists, so that saves made while existing vaults
+     * are still being indexed aren't left out of it.
+     */
+    @Override
+    protected boolean indexesItems() {
+        return schema.isStarted(ItemIndexMigration.VERSION);
+    }
+
+    @Override
+    public boolean isItemIndexComplete() {
+        return schema.isApplied(ItemIndexMigration.VERSION);
+    }
+
+    /**
+     * @return {@code true} if vaults may have deltas to apply when read
+     */
+    private boolean readsDeltas() {
+        return supportsDeltas() && (storedDeltas || Options.isSTORAGE_DELTAS_ENABLED());
+    }
+
+    /**
+     * @return {@code true} while vaults may still be stored in the table from before {@link BinaryUuidMigration}
+     */
+    private boolean hasLegacyRows() {
+        return !schema.isApplied(BinaryUuidMigration.VERSION);
+    }
+
+    /**
+     * Reads the legacy row before the current one, so that a row moved by the migration
+     * in between the two reads is still seen in one of them.
+     */
+    @Override
+    protected byte[] readVault(UUID ownerUUID, int vaultNumber) throws StorageException {
+        if (readsDeltas()) {
+            byte[][] vault = new byte[1][];
+            readWithDeltas("WHERE player_uuid = ? AND vault_number = ?", (ps, index) -> {
+                dialect.setUuid(ps, index, ownerUUID);
+                ps.setInt(index + 1, vaultNumber);
+                return index + 2;
+            }, (owner, number, data) -> vault[0] = data);
+            return vault[0];
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            byte[] legacy = null;
+            if (hasLegacyRows()) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT data FROM vaults_legacy WHERE player_uuid = ? AND vault_number = ?")) {
+                    ps.setString(1, ownerUUID.toString());
+                    ps.setInt(2, vaultNumber);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) legacy = rs.getBytes("data");
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT data FROM vaults WHERE player_uuid = ? AND vault_number = ?")) {
+                dialect.setUuid(ps, 1, ownerUUID);
+                ps.setInt(2, vaultNumber);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getBytes("data") : legacy;
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Map<Integer, byte[]> readVaults(UUID ownerUUID) throws StorageException {
+        Map<Integer, byte[]> vaults = new HashMap<>();
+        if (readsDeltas()) {
+            readWithDeltas("WHERE player_uuid = ?", (ps, index) -> {
+                dialect.setUuid(ps, index, ownerUUID);
+                return index + 1;
+            }, (owner, number, data) -> vaults.put(number, data));
+            return vaults;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            if (hasLegacyRows()) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT vault_number, data FROM vaults_legacy WHERE player_uuid = ?")) {
+                    ps.setString(1, ownerUUID.toString());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            vaults.put(rs.getInt("vault_number"), rs.getBytes("data"));
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT vault_number, data FROM vaults WHERE player_uuid = ?")) {
+                dialect.setUuid(ps, 1, ownerUUID);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        vaults.put(rs.getInt("vault_number"), rs.getBytes("data"));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        return vaults;
+    }
+
+    /**
+     * Reads the vaults of many players with {@code IN} queries of up to {@link #BULK_LOAD_CHUNK_SIZE}
+     * owners each, passing rows on as they are streamed from the result set.
+     */
+    @Override
+    protected void readVaults(Collection<UUID> ownerUUIDs, VaultRowConsumer consumer) throws StorageException {
+        List<UUID> owners = List.copyOf(ownerUUIDs);
+        if (readsDeltas()) {
+            for (int i = 0; i < owners.size(); i += BULK_LOAD_CHUNK_SIZE) {
+                List<UUID> chunk = owners.subList(i, Math.min(i + BULK_LOAD_CHUNK_SIZE, owners.size()));
+                readWithDeltas("WHERE player_uuid IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")", (ps, index) -> {
+                    for (UUID ownerUUID : chunk) {
+                        dialect.setUuid(ps, index++, ownerUUID);
+                    }
+                    return index;
+                }, consumer);
+            }
+            return;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            for (int i = 0; i < owners.size(); i += BULK_LOAD_CHUNK_SIZE) {
+                List<UUID> chunk = owners.subList(i, Math.min(i + BULK_LOAD_CHUNK_SIZE, owners.size()));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+
+                if (hasLegacyRows()) {
+                    try (PreparedStatement ps = conn.prepareStatement("SELECT player_uuid, vault_number, data FROM vaults_legacy WHERE player_uuid IN (" + placeholders + ")")) {
+                        for (int j = 0; j < chunk.size(); j++) {
+                            ps.setString(j + 1, chunk.get(j).toString());
+                        }
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                consumer.accept(UUID.fromString(rs.getString("player_uuid")), rs.getInt("vault_number"), rs.getBytes("data"));
+                            }
+                        }
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement("SELECT player_uuid, vault_number, data FROM vaults WHERE player_uuid IN (" + placeholders + ")")) {
+                    for (int j = 0; j < chunk.size(); j++) {
+                        dialect.setUuid(ps, j + 1, chunk.get(j));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            consumer.accept(dialect.getUuid(rs, "player_uuid"), rs.getInt("vault_number"), rs.getBytes("data"));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads snapshots along with their deltas in a single statement, so that a consolidation
+     * in between can't be half seen, and passes on each vault with its deltas applied.
+     *
+     * @param where the condition selecting vaults, applied to both tables
+     * @param binder binds the condition's parameters, from the given index
+     */
+    private void readWithDeltas(String where, ParameterBinder binder, VaultRowConsumer consumer) throws StorageException {
+        String sql = "SELECT player_uuid, vault_number, 0 AS seq, data FROM vaults " + where +
+                " UNION ALL SELECT player_uuid, vault_number, seq, data FROM vault_deltas " + where +
+                " ORDER BY player_uuid, vault_number, seq";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            binder.bind(ps, binder.bind(ps, 1));
+            try (ResultSet rs = ps.executeQuery()) {
+                UUID owner = null;
+                int number = 0;
+                byte[] snapshot = null;
+                boolean found = false;
+                List<byte[]> deltas = new ArrayList<>();
+                while (rs.next()) {
+                    UUID rowOwner = dialect.getUuid(rs, "player_uuid");
+                    int rowNumber = rs.getInt("vault_number");
+                    if (!rowOwner.equals(owner) || rowNumber != number) {
+                        if (found) consumer.accept(owner, number, merge(owner, number, snapshot, deltas));
+                        owner = rowOwner;
+                        number = rowNumber;
+                        snapshot = null;
+                        found = false;
+                        deltas.clear();
+                    }
+                    if (rs.getInt("seq") == 0) {
+                        snapshot = rs.getBytes("data");
+                        found = true;
+                    } else {
+                        // Deltas left behind by a deleted vault have no snapshot, and are ignored.
+                        deltas.add(rs.getBytes("data"));
+                    }
+                }
+                if (found) consumer.accept(owner, number, merge(owner, number, snapshot, deltas));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    private byte[] merge(UUID ownerUUID, int vaultNumber, byte[] snapshot, List<byte[]> deltas) {
+        try {
+            return applyDeltas(snapshot, deltas);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Error while applying the stored changes of vault " + vaultNumber + " for " + ownerUUID, e);
+            return snapshot;
+        }
+    }
+
+    @Override
+    protected void writeVault(UUID ownerUUID, int vaultNumber, byte[] data) throws StorageException {
+        if (hasLegacyRows() || readsDeltas()) {
+            upsertRows(List.of(new RowWrite(ownerUUID, vaultNumber, data, null, null)));
+            return;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(dialect.getUpsertVaultSql())) {
+            bindUpsert(ps, ownerUUID, vaultNumber, data, System.currentTimeMillis());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void writeVaults(List<PendingWrite> writes) throws StorageException {
+        List<RowWrite> rows = new ArrayList<>(writes.size());
+        for (PendingWrite write : writes) {
+            rows.add(new RowWrite(write.vault().getOwnerUUID(), write.vault().getVaultNumber(), write.data(), write.fullData(), write.items()));
+        }
+        upsertRows(rows);
+    }
+
+    @Override
+    protected void writeVaultDelta(UUID ownerUUID, int vaultNumber, byte[] delta, byte[] fullData) throws StorageException {
+        upsertRows(List.of(new RowWrite(ownerUUID, vaultNumber, delta, fullData, null)));
+    }
+
+    /**
+     * Upserts the given rows in a single transaction. While the migration is running,
+     * each vault's legacy row is removed first, which waits for the migration if it is
+     * moving that row, so the older contents never overwrite this write.
+     * <p>
+     * Delta rows are appended to {@code vault_deltas}, unless the vault already has
+     * {@code storage.deltas.snapshot_every} of them, in which case the whole vault is
+     * written instead. Writing a whole vault removes its deltas.
+     * <p>
+     * Rows carrying item counts replace their vault's rows in {@code vault_items}, once the
+     * vault's row in {@code vaults} is locked, as the index builder locks it before indexing.
+     */
+    private void upsertRows(List<RowWrite> rows) throws StorageException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (hasLegacyRows()) {
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM vaults_legacy WHERE player_uuid = ? AND vault_number = ?")) {
+                        for (RowWrite row : rows) {
+                            ps.setString(1, row.ownerUUID().toString());
+                            ps.setInt(2, row.vaultNumber());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                List<RowWrite> snapshots = appendDeltas(conn, rows);
+                try (PreparedStatement ps = conn.prepareStatement(dialect.getUpsertVaultSql())) {
+                    long now = System.currentTimeMillis();
+                    for (RowWrite row : snapshots) {
+                        bindUpsert(ps, row.ownerUUID(), row.vaultNumber(), row.data(), now);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                if (readsDeltas()) {
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM vault_deltas WHERE player_uuid = ? AND vault_number = ?")) {
+                        for (RowWrite row : snapshots) {
+                            dialect.setUuid(ps, 1, row.ownerUUID());
+                            ps.setInt(2, row.vaultNumber());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                if (schema.isStarted(ItemIndexMigration.VERSION)) {
+                    List<ItemIndexMigration.IndexedVault> indexed = new ArrayList<>(rows.size());
+                    for (RowWrite row : rows) {
+                        if (row.items() != null) {
+                            indexed.add(new ItemIndexMigration.IndexedVault(row.ownerUUID(), row.vaultNumber(), row.items()));
+                        }
+                    }
+                    if (!indexed.isEmpty()) ItemIndexMigration.writeItems(conn, dialect, indexed);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Appends the delta rows among the given rows to {@code vault_deltas}, and updates
+     * when their vaults were last modified, which also locks their rows in {@code vaults}.
+     *
+     * @return the rows to be written as whole vaults, including deltas due for consolidation
+     */
+    private List<RowWrite> appendDeltas(Connection conn, List<RowWrite> rows) throws SQLException {
+        if (rows.stream().allMatch(row -> row.fullData() == null)) return rows;
+
+        List<RowWrite> snapshots = new ArrayList<>(rows.size());
+        try (PreparedStatement next = conn.prepareStatement("SELECT COALESCE(MAX(seq), 0) + 1 FROM vault_deltas WHERE player_uuid = ? AND vault_number = ?");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO vault_deltas (player_uuid, vault_number, seq, data) VALUES (?, ?, ?, ?)");
+             PreparedStatement touch = conn.prepareStatement("UPDATE vaults SET last_modified = ? WHERE player_uuid = ? AND vault_number = ?")) {
+            long now = System.currentTimeMillis();
+            for (RowWrite row : rows) {
+                if (row.fullData() == null) {
+                    snapshots.add(row);
+                    continue;
+                }
+
+                dialect.setUuid(next, 1, row.ownerUUID());
+                next.setInt(2, row.vaultNumber());
+                int seq;
+                try (ResultSet rs = next.executeQuery()) {
+                    rs.next();
+                    seq = rs.getInt(1);
+                }
+                if (seq > Options.getSTORAGE_DELTAS_SNAPSHOT_EVERY()) {
+                    snapshots.add(new RowWrite(row.ownerUUID(), row.vaultNumber(), Compression.compress(row.fullData()), null, row.items()));
+                    continue;
+                }
+
+                // Executed one at a time, so two deltas of a vault in the same batch are numbered apart.
+                dialect.setUuid(insert, 1, row.ownerUUID());
+                insert.setInt(2, row.vaultNumber());
+                insert.setInt(3, seq);
+                insert.setBytes(4, row.data());
+                insert.executeUpdate();
+                storedDeltas = true;
+
+                touch.setLong(1, now);
+                dialect.setUuid(touch, 2, row.ownerUUID());
+                touch.setInt(3, row.vaultNumber());
+                touch.executeUpdate();
+            }
+        }
+        return snapshots;
+    }
+
+    private void bindUpsert(PreparedStatement ps, UUID ownerUUID, int vaultNumber, byte[] data, long lastModified) throws SQLException {
+        dialect.setUuid(ps, 1, ownerUUID);
+        ps.setInt(2, vaultNumber);
+        ps.setBytes(3, data);
+        ps.setLong(4, lastModified);
+        ps.setInt(5, data.length);
+    }
+
+    /**
+     * Deletes a vault's rows from every table that holds them in a single transaction,
+     * so a failure can't leave its deltas or index rows behind without the vault.
+     */
+    @Override
+    protected boolean removeVault(UUID ownerUUID, int vaultNumber) throws StorageException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int removed = 0;
+                if (hasLegacyRows()) {
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM vaults_legacy WHERE player_uuid = ? AND vault_number = ?")) {
+                        ps.setString(1, ownerUUID.toString());
+                        ps.setInt(2, vaultNumber);
+                        removed += ps.executeUpdate();
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM vaults WHERE player_uuid = ? AND vault_number = ?")) {
+                    dialect.setUuid(ps, 1, ownerUUID);
+                    ps.setInt(2, vaultNumber);
+                    removed += ps.executeUpdate();
+                }
+                if (supportsDeltas()) {
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM vault_deltas WHERE player_uuid = ? AND vault_number = ?")) {
+                        dialect.setUuid(ps, 1, ownerUUID);
+                        ps.setInt(2, vaultNumber);
+                        ps.executeUpdate();
+                    }
+                }
+                if (schema.isStarted(ItemIndexMigration.VERSION)) {
+                    ItemIndexMigration.writeItems(conn, dialect, List.of(new ItemIndexMigration.IndexedVault(ownerUUID, vaultNumber, Map.of())));
+                }
+                conn.commit();
+                return removed > 0;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a page of matches from {@code vault_items}, which its search index serves in order
+     * without visiting the rows of other items.
+     */
+    @Override
+    protected List<ItemMatch> findItems(String material, String component, int offset, int limit) throws StorageException {
+        if (!schema.isStarted(ItemIndexMigration.VERSION)) return null;
+
+        List<ItemMatch> matches = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT player_uuid, vault_number, amount FROM vault_items " +
+                     "WHERE material = ? AND component = ? " +
+                     "ORDER BY amount DESC, player_uuid, vault_number LIMIT ? OFFSET ?")) {
+            ps.setString(1, material);
+            ps.setString(2, component);
+            ps.setInt(3, limit);
+            ps.setInt(4, offset);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    matches.add(new ItemMatch(dialect.getUuid(rs, "player_uuid"), rs.getInt("vault_number"), rs.getInt("amount")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        return matches;
+    }
+
+    @Override
+    protected List<byte[]> sampleVaults(int sampleSize) throws StorageException {
+        List<byte[]> samples = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT data FROM vaults ORDER BY " + dialect.getRandomFunction() + " LIMIT ?")) {
+            ps.setInt(1, sampleSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    byte[] data = rs.getBytes("data");
+                    if (data != null) samples.add(data);
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        return samples;
+    }
+
+    @Override
+    protected Map<Integer, byte[]> readDictionaries() throws StorageException {
+        Map<Integer, byte[]> dictionaries = new TreeMap<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, data FROM vault_dictionaries ORDER BY id")) {
+            while (rs.next()) {
+                dictionaries.put(rs.getInt("id"), rs.getBytes("data"));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        return dictionaries;
+    }
+
+    @Override
+    protected int writeDictionary(byte[] dictionary) throws StorageException {
+        try (Connection conn = dataSource.getConnection()) {
+            int id;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM vault_dictionaries")) {
+                rs.next();
+                id = rs.getInt(1);
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO vault_dictionaries (id, data) VALUES (?, ?)")) {
+                ps.setInt(1, id);
+                ps.setBytes(2, dictionary);
+                ps.executeUpdate();
+            }
+            return id;
+        } catch (SQLException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void migrateLegacyBlobs() {
+        legacyMigrator = new LegacyBlobMigrator(dataSource, dialect, logger);
+        // The blob format is only rewritten once rows have their final keys.
+        schema.getCompletion().thenRun(() -> executor.submitBackground(legacyMigrator));
+    }
+
+    @Override
+    public void stopBackgroundTasks() {
+        schema.stop();
+        if (legacyMigrator != null) {
+            legacyMigrator.stop();
+        }
+    }
+
+    @Override
+    public void resizePool(int concurrency) {
+        dataSource.getHikariConfigMXBean().setMaximumPoolSize(concurrency + POOL_HEADROOM);
+    }
+
+    @Override
+    protected void close() {
+        dataSource.close();
+    }
+
+    /**
+     * A vault to be written; a delta write when {@code fullData} holds the whole vault to consolidate into.
+     * Its rows in the item index are replaced when {@code items} isn't {@code null}.
+     */
+    private record RowWrite(UUID ownerUUID, int vaultNumber, byte[] data, byte[] fullData, Map<ItemCounts.Key, Integer> items) {
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        /**
+         * Binds parameters starting at the given index.
+         *
+         * @return the index of the next parameter
+         */
+        int bind(PreparedStatement ps, int index) throws SQLException;
+    }
+
+}
@@ -0,0 +1,165 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.util.Compression;
+import dev.dxnny.otterVaults.util.Serializers;
+import org.bukkit.inventory.ItemStack;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background job that rewrites legacy {@code BukkitObjectOutputStream} vault blobs
+ * in place using the compact vault format. Rows are visited in key order, a chunk at
+ * a time, with a pause between chunks so the job never competes with player saves.
+ */
+public class LegacyBlobMigrator implements Runnable {
+    private static final int CHUNK_SIZE = 200;
+    private static final long CHUNK_PAUSE_MS = 50;
+
+    private final DataSource dataSource;
+    private final SqlDialect dialect;
+    private final Logger logger;
+    private volatile boolean running = true;
+
+    public LegacyBlobMigrator(DataSource dataSource, SqlDialect dialect, Logger logger) {
+        this.dataSource = dataSource;
+        this.dialect = dialect;
+        this.logger = logger;
+    }
+
+    /**
+     * Stops the migration after the chunk currently being processed.
+     * Remaining legacy rows are picked up on the next start.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        UUID lastUUID = new UUID(0L, 0L);
+        int lastNumber = -1;
+        int migrated = 0;
+
+        try {
+            while (running) {
+                List<RowKey> legacyRows = new ArrayList<>();
+                int scanned = 0;
+
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement ps = conn.prepareStatement("SELECT player_uuid, vault_number, data FROM vaults " +
+                             "WHERE player_uuid > ? OR (player_uuid = ? AND vault_number > ?) " +
+                             "ORDER BY player_uuid, vault_number LIMIT ?")) {
+                    dialect.setUuid(ps, 1, lastUUID);
+                    dialect.setUuid(ps, 2, lastUUID);
+                    ps.setInt(3, lastNumber);
+                    ps.setInt(4, CHUNK_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            scanned++;
+                            lastUUID = dialect.getUuid(rs, "player_uuid");
+                            lastNumber = rs.getInt("vault_number");
+                            if (Serializers.isLegacy(decompress(lastUUID, lastNumber, rs.getBytes("data")))) {
+                                legacyRows.add(new RowKey(lastUUID, lastNumber));
+                            }
+                        }
+                    }
+                }
+
+                if (!legacyRows.isEmpty()) {
+                    migrated += migrateChunk(legacyRows);
+                }
+                if (scanned < CHUNK_SIZE) break;
+
+                Thread.sleep(CHUNK_PAUSE_MS);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error while migrating legacy vault data!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (migrated > 0) {
+            logger.info("Migrated " + migrated + " vaults to the compact storage format.");
+        }
+        OtterVaults.debug("Legacy vault migration " + (running ? "finished" : "stopped") + " after " + migrated + " vaults.");
+    }
+
+    /**
+     * Converts the given rows in a single transaction. Each row is re-read under a row lock
+     * (or, on SQLite, the database write lock), so a save that landed after the scan is
+     * never overwritten with older contents.
+     *
+     * @param rows the keys of rows that held legacy blobs when scanned
+     * @return the number of rows converted
+     */
+    private int migrateChunk(List<RowKey> rows) throws SQLException {
+        int converted = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement select = conn.prepareStatement("SELECT data FROM vaults WHERE player_uuid = ? AND vault_number = ?" + dialect.getLockClause());
+                 PreparedStatement update = conn.prepareStatement("UPDATE vaults SET data = ?, byte_size = ? WHERE player_uuid = ? AND vault_number = ?")) {
+                for (RowKey row : rows) {
+                    dialect.setUuid(select, 1, row.uuid());
+                    select.setInt(2, row.vaultNumber());
+
+                    byte[] blob;
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (!rs.next()) continue;
+                        blob = rs.getBytes("data");
+                    }
+                    byte[] raw = decompress(row.uuid(), row.vaultNumber(), blob);
+                    if (!Serializers.isLegacy(raw)) continue;
+
+                    ItemStack[] contents = Serializers.deserializeInv(raw);
+                    if (contents == null) continue; // Left as-is; already reported while deserializing.
+                    byte[] compact = Serializers.serializeInv(contents);
+                    if (compact == null) continue;
+
+                    byte[] stored = Compression.compress(compact);
+                    update.setBytes(1, stored);
+                    update.setInt(2, stored.length);
+                    dialect.setUuid(update, 3, row.uuid());
+                    update.setInt(4, row.vaultNumber());
+                    update.executeUpdate();
+                    converted++;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * Decompresses a vault's stored bytes, so that a row that can't be read is skipped
+     * instead of aborting the migration. It is left as-is, and reported on every scan.
+     *
+     * @return the raw bytes, or {@code null} if they are corrupt
+     */
+    private byte[] decompress(UUID ownerUUID, int vaultNumber, byte[] stored) {
+        try {
+            return Compression.decompress(stored);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Skipped migrating vault " + vaultNumber + " for " + ownerUUID + ", as its data can't be read", e);
+            return null;
+        }
+    }
+
+    private record RowKey(UUID uuid, int vaultNumber) {
+    }
+
+}
@@ -0,0 +1,140 @@
+package dev.dxnny.otterVaults.storage;
+
+import lombok.Getter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single segment file of a {@link LogVaultStorage}. The active segment is appended to and
+ * read with positional reads; once sealed, a segment is immutable and read through a memory map.
+ */
+final class LogSegment {
+    @Getter
+    private final int id;
+    private final Path file;
+    @Getter
+    private final Path hintFile;
+    private final FileChannel channel;
+    private volatile long size;
+    private volatile MappedByteBuffer mapped;
+    // Bytes of records that have since been superseded or deleted.
+    private final AtomicLong deadBytes = new AtomicLong();
+
+    LogSegment(Path directory, int id) throws IOException {
+        this.id = id;
+        this.file = directory.resolve(String.format("segment-%08d.log", id));
+        this.hintFile = directory.resolve(String.format("segment-%08d.hint", id));
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = channel.size();
+    }
+
+    /**
+     * Appends a record to the end of the segment.
+     *
+     * @param record the encoded record
+     * @return the offset the record was written at
+     */
+    long append(ByteBuffer record) throws IOException {
+        long offset = size;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        size = position;
+        return offset;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Cuts the segment off after the given length, discarding a torn tail write.
+     */
+    void truncate(long length) throws IOException {
+        channel.truncate(length);
+        size = length;
+    }
+
+    /**
+     * Marks the segment as immutable, and maps it into memory for reads.
+     */
+    void seal() throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    boolean isSealed() {
+        return mapped != null;
+    }
+
+    /**
+     * Returns the segment's current contents for a sequential scan. The active segment is
+     * read onto the heap rather than mapped, since it may still be truncated.
+     *
+     * @return a buffer over the whole segment
+     */
+    ByteBuffer contents() throws IOException {
+        MappedByteBuffer current = mapped;
+        if (current != null) return current.duplicate();
+        return ByteBuffer.wrap(read(0, (int) size));
+    }
+
+    /**
+     * Reads bytes at the given offset.
+     *
+     * @param offset the offset within the segment
+     * @param length the number of bytes to read
+     * @return the bytes read
+     */
+    byte[] read(long offset, int length) throws IOException {
+        byte[] out = new byte[length];
+        MappedByteBuffer current = mapped;
+        if (current != null) {
+            current.get((int) offset, out);
+            return out;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(out);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException("Read past the end of segment " + id);
+            position += read;
+        }
+        return out;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long deadBytes() {
+        return deadBytes.get();
+    }
+
+    void addDeadBytes(long bytes) {
+        deadBytes.addAndGet(bytes);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes and deletes the segment and its hint file.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(hintFile);
+    }
+
+}
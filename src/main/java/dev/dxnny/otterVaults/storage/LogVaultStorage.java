@@ -0,0 +1,623 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.config.Options;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Stores vaults as records appended to segment files, with an in-memory index of where the
+ * latest record of each vault is. A save is a single sequential write, instead of a database
+ * upsert; replaced and deleted records are dropped later by a background compactor.
+ * <p>
+ * Each record is {@code [crc32c][type][owner msb][owner lsb][vault number][length][data]}.
+ * Batched saves are followed by a commit record, and are discarded on startup if the commit
+ * is missing. Sealed segments get a hint file listing their records, so the index can be rebuilt
+ * without reading every vault; the last segment is always scanned, and cut off after the last
+ * intact record if the server stopped in the middle of a write.
+ */
+public class LogVaultStorage extends AbstractVaultStorage {
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final UUID NO_OWNER = new UUID(0L, 0L);
+    private static final int HEADER_SIZE = 29;
+    private static final int HINT_ENTRY_SIZE = 33;
+
+    private static final byte TYPE_VAULT = 1;
+    private static final byte TYPE_TOMBSTONE = 2;
+    private static final byte TYPE_DICTIONARY = 3;
+    private static final byte TYPE_BATCH_VAULT = 4;
+    private static final byte TYPE_COMMIT = 5;
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final boolean syncWrites;
+    private final double compactionThreshold;
+
+    // Guards appends, segment rolls, and index updates.
+    private final Object writeLock = new Object();
+    private final ConcurrentSkipListMap<Integer, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final Map<UUID, Map<Integer, Location>> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Location> dictionaryIndex = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ScheduledExecutorService compactionTimer;
+    private LogSegment active;
+
+    /**
+     * Constructs a log-structured storage backend, configured from {@link Options}.
+     * Existing segments are indexed, and a torn write at the end of the log is discarded.
+     *
+     * @param directory the folder the segment files are stored in
+     * @param logger the logger used to report storage errors
+     * @param executor the executor asynchronous operations and compaction are run on
+     */
+    public LogVaultStorage(File directory, Logger logger, StorageExecutor executor) {
+        super(logger, executor);
+        this.directory = directory.toPath();
+        this.maxSegmentSize = Math.max(1, Options.getSTORAGE_LOG_SEGMENT_SIZE_MB()) * 1024L * 1024L;
+        this.syncWrites = Options.isSTORAGE_LOG_SYNC_WRITES();
+        this.compactionThreshold = Options.getSTORAGE_LOG_COMPACTION_THRESHOLD();
+
+        try {
+            open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while opening the vault log in " + directory, e);
+        }
+        loadDictionaries();
+
+        long interval = Math.max(1, Options.getSTORAGE_LOG_COMPACTION_INTERVAL_SECONDS());
+        this.compactionTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OtterVaults-Compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionTimer.scheduleWithFixedDelay(() -> executor.submitBackground(this::compact), interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Indexes every segment in the directory, oldest first, and opens the newest one for appending.
+     */
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) ids.add(Integer.parseInt(matcher.group(1)));
+            });
+        }
+        Collections.sort(ids);
+
+        for (int i = 0; i < ids.size(); i++) {
+            LogSegment segment = new LogSegment(directory, ids.get(i));
+            segments.put(segment.getId(), segment);
+            boolean last = i == ids.size() - 1;
+
+            if (!last && readHint(segment)) {
+                segment.seal();
+                continue;
+            }
+
+            List<Entry> entries = new ArrayList<>();
+            long valid = scan(segment, entries);
+            entries.forEach(entry -> apply(segment, entry));
+            if (valid < segment.size()) {
+                if (last) {
+                    logger.warning("Discarding " + (segment.size() - valid) + " bytes of an incomplete write at the end of vault log segment " + segment.getId() + ".");
+                    segment.truncate(valid);
+                } else {
+                    logger.severe("Vault log segment " + segment.getId() + " is damaged after offset " + valid + "; vaults stored after it may be missing.");
+                }
+            }
+            if (!last) {
+                writeHint(segment, entries);
+                segment.seal();
+            }
+        }
+
+        if (segments.isEmpty()) {
+            active = new LogSegment(directory, 1);
+            segments.put(active.getId(), active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    @Override
+    protected byte[] readVault(UUID ownerUUID, int vaultNumber) throws StorageException {
+        return read(() -> {
+            Map<Integer, Location> vaults = index.get(ownerUUID);
+            return vaults == null ? null : vaults.get(vaultNumber);
+        });
+    }
+
+    @Override
+    protected Map<Integer, byte[]> readVaults(UUID ownerUUID) throws StorageException {
+        Map<Integer, byte[]> vaults = new HashMap<>();
+        Map<Integer, Location> locations = index.get(ownerUUID);
+        if (locations == null) return vaults;
+
+        for (Integer vaultNumber : locations.keySet()) {
+            byte[] data = read(() -> locations.get(vaultNumber));
+            if (data != null) vaults.put(vaultNumber, data);
+        }
+        return vaults;
+    }
+
+    @Override
+    protected void writeVault(UUID ownerUUID, int vaultNumber, byte[] data) throws StorageException {
+        try {
+            LogSegment sealed;
+            synchronized (writeLock) {
+                ByteBuffer record = encode(TYPE_VAULT, ownerUUID, vaultNumber, data);
+                sealed = rollIfFull(record.remaining());
+                Location location = append(record, data.length);
+                if (syncWrites) active.force();
+                put(ownerUUID, vaultNumber, location);
+            }
+            writeHintLater(sealed);
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Appends the vaults followed by a commit record, so that a batch cut short by a crash is
+     * discarded as a whole. A batch is never split across segments.
+     */
+    @Override
+    protected void writeVaults(List<PendingWrite> writes) throws StorageException {
+        List<ByteBuffer> records = new ArrayList<>(writes.size() + 1);
+        long batchSize = 0;
+        for (PendingWrite write : writes) {
+            ByteBuffer record = encode(TYPE_BATCH_VAULT, write.vault().getOwnerUUID(), write.vault().getVaultNumber(), write.data());
+            records.add(record);
+            batchSize += record.remaining();
+        }
+        ByteBuffer commit = encode(TYPE_COMMIT, NO_OWNER, writes.size(), new byte[0]);
+        batchSize += commit.remaining();
+
+        try {
+            LogSegment sealed;
+            synchronized (writeLock) {
+                sealed = rollIfFull(batchSize);
+                List<Location> locations = new ArrayList<>(writes.size());
+                for (int i = 0; i < writes.size(); i++) {
+                    locations.add(append(records.get(i), writes.get(i).data().length));
+                }
+                active.append(commit);
+                active.addDeadBytes(HEADER_SIZE);
+                if (syncWrites) active.force();
+
+                for (int i = 0; i < writes.size(); i++) {
+                    put(writes.get(i).vault().getOwnerUUID(), writes.get(i).vault().getVaultNumber(), locations.get(i));
+                }
+            }
+            writeHintLater(sealed);
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected boolean removeVault(UUID ownerUUID, int vaultNumber) throws StorageException {
+        try {
+            LogSegment sealed;
+            synchronized (writeLock) {
+                Map<Integer, Location> vaults = index.get(ownerUUID);
+                if (vaults == null || !vaults.containsKey(vaultNumber)) return false;
+
+                ByteBuffer record = encode(TYPE_TOMBSTONE, ownerUUID, vaultNumber, new byte[0]);
+                sealed = rollIfFull(record.remaining());
+                Location tombstone = append(record, 0);
+                if (syncWrites) active.force();
+
+                markDead(vaults.remove(vaultNumber));
+                markDead(tombstone);
+                if (vaults.isEmpty()) index.remove(ownerUUID);
+            }
+            writeHintLater(sealed);
+            return true;
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected List<byte[]> sampleVaults(int sampleSize) throws StorageException {
+        List<Map.Entry<UUID, Integer>> keys = new ArrayList<>();
+        index.forEach((ownerUUID, vaults) -> vaults.keySet().forEach(vaultNumber -> keys.add(Map.entry(ownerUUID, vaultNumber))));
+        Collections.shuffle(keys);
+
+        List<byte[]> samples = new ArrayList<>();
+        for (Map.Entry<UUID, Integer> key : keys.subList(0, Math.min(sampleSize, keys.size()))) {
+            byte[] data = readVault(key.getKey(), key.getValue());
+            if (data != null) samples.add(data);
+        }
+        return samples;
+    }
+
+    @Override
+    protected Map<Integer, byte[]> readDictionaries() throws StorageException {
+        Map<Integer, byte[]> dictionaries = new TreeMap<>();
+        for (Integer id : dictionaryIndex.keySet()) {
+            byte[] data = read(() -> dictionaryIndex.get(id));
+            if (data != null) dictionaries.put(id, data);
+        }
+        return dictionaries;
+    }
+
+    @Override
+    protected int writeDictionary(byte[] dictionary) throws StorageException {
+        try {
+            int id;
+            LogSegment sealed;
+            synchronized (writeLock) {
+                id = dictionaryIndex.isEmpty() ? 1 : dictionaryIndex.lastKey() + 1;
+                ByteBuffer record = encode(TYPE_DICTIONARY, NO_OWNER, id, dictionary);
+                sealed = rollIfFull(record.remaining());
+                Location location = append(record, dictionary.length);
+                active.force();
+                dictionaryIndex.put(id, location);
+            }
+            writeHintLater(sealed);
+            return id;
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rewrites the live records of every sealed segment that is mostly replaced or deleted
+     * records to the end of the log, then deletes the segment. Runs as background work.
+     */
+    void compact() {
+        if (!compacting.compareAndSet(false, true)) return;
+        try {
+            for (LogSegment segment : segments.values()) {
+                if (!segment.isSealed() || segment.size() == 0) continue;
+                if (segment.deadBytes() < segment.size() * compactionThreshold) continue;
+                compactSegment(segment);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error while compacting the vault log!", e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    private void compactSegment(LogSegment segment) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        scan(segment, entries);
+        // Tombstones only matter while an older segment may still hold the deleted vault.
+        boolean olderSegments = segments.firstKey() < segment.getId();
+
+        long reclaimed = segment.size();
+        for (Entry entry : entries) {
+            LogSegment sealed = null;
+            synchronized (writeLock) {
+                switch (entry.type()) {
+                    case TYPE_VAULT -> {
+                        Map<Integer, Location> vaults = index.get(entry.ownerUUID());
+                        Location current = vaults == null ? null : vaults.get(entry.number());
+                        if (!entry.isAt(segment, current)) continue;
+
+                        byte[] data = segment.read(entry.offset() + HEADER_SIZE, entry.length());
+                        ByteBuffer record = encode(TYPE_VAULT, entry.ownerUUID(), entry.number(), data);
+                        sealed = rollIfFull(record.remaining());
+                        vaults.put(entry.number(), append(record, data.length));
+                        reclaimed -= record.capacity();
+                    }
+                    case TYPE_DICTIONARY -> {
+                        if (!entry.isAt(segment, dictionaryIndex.get(entry.number()))) continue;
+
+                        byte[] data = segment.read(entry.offset() + HEADER_SIZE, entry.length());
+                        ByteBuffer record = encode(TYPE_DICTIONARY, NO_OWNER, entry.number(), data);
+                        sealed = rollIfFull(record.remaining());
+                        dictionaryIndex.put(entry.number(), append(record, data.length));
+                        reclaimed -= record.capacity();
+                    }
+                    case TYPE_TOMBSTONE -> {
+                        Map<Integer, Location> vaults = index.get(entry.ownerUUID());
+                        if (!olderSegments || (vaults != null && vaults.containsKey(entry.number()))) continue;
+
+                        ByteBuffer record = encode(TYPE_TOMBSTONE, entry.ownerUUID(), entry.number(), new byte[0]);
+                        sealed = rollIfFull(record.remaining());
+                        markDead(append(record, 0));
+                        reclaimed -= record.capacity();
+                    }
+                }
+            }
+            writeHintLater(sealed);
+        }
+
+        synchronized (writeLock) {
+            active.force();
+            segments.remove(segment.getId());
+        }
+        // Readers still holding a location in this segment read from its mapping, which outlives the file.
+        segment.delete();
+        logger.info("Compacted vault log segment " + segment.getId() + ", reclaiming " + reclaimed + " bytes.");
+    }
+
+    @Override
+    public void stopBackgroundTasks() {
+        compactionTimer.shutdownNow();
+    }
+
+    @Override
+    protected void close() {
+        synchronized (writeLock) {
+            try {
+                active.force();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error while flushing the vault log!", e);
+            }
+            for (LogSegment segment : segments.values()) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Error while closing vault log segment " + segment.getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the data of the record at a location, looking the location up again if
+     * compaction moved the record in the meantime.
+     *
+     * @param lookup looks up the current location of the record
+     * @return the record's data, or {@code null} if there is no such record
+     */
+    private byte[] read(Supplier<Location> lookup) throws StorageException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Location location = lookup.get();
+            if (location == null) return null;
+
+            LogSegment segment = segments.get(location.segmentId());
+            if (segment == null) continue;
+            try {
+                return segment.read(location.offset() + HEADER_SIZE, location.length());
+            } catch (ClosedChannelException e) {
+                // The segment was compacted away between the lookup and the read.
+            } catch (IOException e) {
+                throw new StorageException(e.getMessage(), e);
+            }
+        }
+        throw new StorageException("Record kept moving while being read", null);
+    }
+
+    /**
+     * Appends a record to the active segment. Must hold the write lock.
+     */
+    private Location append(ByteBuffer record, int length) throws IOException {
+        long offset = active.append(record);
+        return new Location(active.getId(), offset, length);
+    }
+
+    /**
+     * Seals the active segment and starts a new one if the given number of bytes
+     * wouldn't fit in it. Must hold the write lock.
+     *
+     * @return the segment that was sealed, to be passed to {@link #writeHintLater} once the lock is released,
+     *         or {@code null} if the active segment had room
+     */
+    private LogSegment rollIfFull(long incoming) throws IOException {
+        if (active.size() == 0 || active.size() + incoming <= maxSegmentSize) return null;
+
+        LogSegment sealed = active;
+        sealed.force();
+        sealed.seal();
+        active = new LogSegment(directory, sealed.getId() + 1);
+        segments.put(active.getId(), active);
+        return sealed;
+    }
+
+    /**
+     * Writes the hint file of a sealed segment on the compaction thread. Must not hold the write lock.
+     * Never blocks: once the plugin is stopping the hint is skipped, and the segment is scanned on the next start instead.
+     *
+     * @param sealed the sealed segment, or {@code null} to do nothing
+     */
+    private void writeHintLater(LogSegment sealed) {
+        if (sealed == null) return;
+        try {
+            compactionTimer.execute(() -> {
+                try {
+                    List<Entry> entries = new ArrayList<>();
+                    scan(sealed, entries);
+                    writeHint(sealed, entries);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Error while writing the hint file of vault log segment " + sealed.getId(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.fine("Skipping the hint file of vault log segment " + sealed.getId() + " while stopping.");
+        }
+    }
+
+    /**
+     * Points the index at a vault's new record, and counts its previous record as dead.
+     * Must hold the write lock.
+     */
+    private void put(UUID ownerUUID, int vaultNumber, Location location) {
+        markDead(index.computeIfAbsent(ownerUUID, uuid -> new ConcurrentHashMap<>()).put(vaultNumber, location));
+    }
+
+    private void markDead(Location location) {
+        if (location == null) return;
+        LogSegment segment = segments.get(location.segmentId());
+        if (segment != null) segment.addDeadBytes(HEADER_SIZE + location.length());
+    }
+
+    /**
+     * Applies a record read on startup to the index. Segments are applied oldest first,
+     * so later records replace earlier ones.
+     */
+    private void apply(LogSegment segment, Entry entry) {
+        Location location = new Location(segment.getId(), entry.offset(), entry.length());
+        switch (entry.type()) {
+            case TYPE_VAULT -> put(entry.ownerUUID(), entry.number(), location);
+            case TYPE_DICTIONARY -> dictionaryIndex.put(entry.number(), location);
+            case TYPE_TOMBSTONE -> {
+                Map<Integer, Location> vaults = index.get(entry.ownerUUID());
+                if (vaults != null) {
+                    markDead(vaults.remove(entry.number()));
+                    if (vaults.isEmpty()) index.remove(entry.ownerUUID());
+                }
+                markDead(location);
+            }
+        }
+    }
+
+    /**
+     * Reads every intact, committed record of a segment. Vaults of a batch are only
+     * listed once its commit record has been read.
+     *
+     * @param segment the segment to read
+     * @param entries the list the records are added to, with batched vaults listed as plain vaults
+     * @return the length of the segment up to the end of its last intact, committed record
+     */
+    private long scan(LogSegment segment, List<Entry> entries) throws IOException {
+        ByteBuffer buffer = segment.contents();
+        int limit = buffer.limit();
+        int position = 0;
+        long valid = 0;
+        List<Entry> batch = new ArrayList<>();
+        CRC32C crc = new CRC32C();
+
+        while (position + HEADER_SIZE <= limit) {
+            byte type = buffer.get(position + 4);
+            int length = buffer.getInt(position + 25);
+            if (length < 0 || length > limit - position - HEADER_SIZE) break;
+
+            crc.reset();
+            crc.update(buffer.slice(position + 4, HEADER_SIZE - 4 + length));
+            if ((int) crc.getValue() != buffer.getInt(position)) break;
+
+            UUID ownerUUID = new UUID(buffer.getLong(position + 5), buffer.getLong(position + 13));
+            int number = buffer.getInt(position + 21);
+            switch (type) {
+                case TYPE_VAULT, TYPE_TOMBSTONE, TYPE_DICTIONARY -> {
+                    entries.add(new Entry(type, ownerUUID, number, position, length));
+                    valid = position + HEADER_SIZE + length;
+                }
+                case TYPE_BATCH_VAULT -> batch.add(new Entry(TYPE_VAULT, ownerUUID, number, position, length));
+                case TYPE_COMMIT -> {
+                    entries.addAll(batch);
+                    batch.clear();
+                    valid = position + HEADER_SIZE;
+                }
+                default -> {
+                    return valid;
+                }
+            }
+            position += HEADER_SIZE + length;
+        }
+        return valid;
+    }
+
+    /**
+     * Writes a segment's records to its hint file, replacing the file atomically.
+     * The hint ends with the number of entries and a checksum over them.
+     */
+    private void writeHint(LogSegment segment, List<Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * HINT_ENTRY_SIZE + 8);
+        for (Entry entry : entries) {
+            buffer.put(entry.type())
+                    .putLong(entry.ownerUUID().getMostSignificantBits())
+                    .putLong(entry.ownerUUID().getLeastSignificantBits())
+                    .putInt(entry.number())
+                    .putLong(entry.offset())
+                    .putInt(entry.length());
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt(entries.size()).putInt((int) crc.getValue());
+
+        Path temp = segment.getHintFile().resolveSibling(segment.getHintFile().getFileName() + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, segment.getHintFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Applies a segment's hint file to the index, instead of scanning the segment.
+     *
+     * @return {@code true} if the hint file was present and intact
+     */
+    private boolean readHint(LogSegment segment) throws IOException {
+        if (!Files.exists(segment.getHintFile())) return false;
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment.getHintFile()));
+        int count = buffer.capacity() >= 8 ? buffer.getInt(buffer.capacity() - 8) : -1;
+        if (count < 0 || (long) count * HINT_ENTRY_SIZE + 8 != buffer.capacity()) return false;
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, count * HINT_ENTRY_SIZE);
+        if ((int) crc.getValue() != buffer.getInt(buffer.capacity() - 4)) return false;
+
+        for (int i = 0; i < count; i++) {
+            byte type = buffer.get();
+            UUID ownerUUID = new UUID(buffer.getLong(), buffer.getLong());
+            int number = buffer.getInt();
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            apply(segment, new Entry(type, ownerUUID, number, offset, length));
+        }
+        return true;
+    }
+
+    private static ByteBuffer encode(byte type, UUID ownerUUID, int number, byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        buffer.putInt(0)
+                .put(type)
+                .putLong(ownerUUID.getMostSignificantBits())
+                .putLong(ownerUUID.getLeastSignificantBits())
+                .putInt(number)
+                .putInt(data.length)
+                .put(data);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 4, buffer.capacity() - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.flip();
+    }
+
+    /**
+     * Where the latest record of a vault or dictionary starts.
+     */
+    private record Location(int segmentId, long offset, int length) {
+    }
+
+    /**
+     * A record read from a segment or its hint file.
+     */
+    private record Entry(byte type, UUID ownerUUID, int number, long offset, int length) {
+
+        boolean isAt(LogSegment segment, Location location) {
+            return location != null && location.segmentId() == segment.getId() && location.offset() == offset;
+        }
+
+    }
+
+}
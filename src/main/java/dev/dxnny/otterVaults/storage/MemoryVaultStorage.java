@@ -0,0 +1,81 @@
+package dev.dxnny.otterVaults.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+
+/**
+ * Keeps vaults in memory only, so they are lost when the server stops.
+ * Meant for testing, and as a baseline when comparing backends.
+ */
+public class MemoryVaultStorage extends AbstractVaultStorage {
+    private final Map<UUID, Map<Integer, byte[]>> vaults = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, byte[]> dictionaries = new ConcurrentSkipListMap<>();
+
+    public MemoryVaultStorage(Logger logger, StorageExecutor executor) {
+        super(logger, executor);
+        loadDictionaries();
+    }
+
+    @Override
+    protected byte[] readVault(UUID ownerUUID, int vaultNumber) {
+        Map<Integer, byte[]> owned = vaults.get(ownerUUID);
+        return owned == null ? null : owned.get(vaultNumber);
+    }
+
+    @Override
+    protected Map<Integer, byte[]> readVaults(UUID ownerUUID) {
+        Map<Integer, byte[]> owned = vaults.get(ownerUUID);
+        return owned == null ? Map.of() : new HashMap<>(owned);
+    }
+
+    @Override
+    protected void writeVault(UUID ownerUUID, int vaultNumber, byte[] data) {
+        vaults.computeIfAbsent(ownerUUID, uuid -> new ConcurrentHashMap<>()).put(vaultNumber, data);
+    }
+
+    @Override
+    protected synchronized void writeVaults(List<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            writeVault(write.vault().getOwnerUUID(), write.vault().getVaultNumber(), write.data());
+        }
+    }
+
+    @Override
+    protected boolean removeVault(UUID ownerUUID, int vaultNumber) {
+        Map<Integer, byte[]> owned = vaults.get(ownerUUID);
+        return owned != null && owned.remove(vaultNumber) != null;
+    }
+
+    @Override
+    protected List<byte[]> sampleVaults(int sampleSize) {
+        List<byte[]> all = new ArrayList<>();
+        vaults.values().forEach(owned -> all.addAll(owned.values()));
+        Collections.shuffle(all);
+        return all.subList(0, Math.min(sampleSize, all.size()));
+    }
+
+    @Override
+    protected Map<Integer, byte[]> readDictionaries() {
+        return dictionaries;
+    }
+
+    @Override
+    protected synchronized int writeDictionary(byte[] dictionary) {
+        int id = dictionaries.isEmpty() ? 1 : dictionaries.lastKey() + 1;
+        dictionaries.put(id, dictionary);
+        return id;
+    }
+
+    @Override
+    protected void close() {
+        vaults.clear();
+    }
+
+}
@@ -0,0 +1,261 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.metrics.VaultMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A second-level cache of the stored bytes of players' vaults, kept in direct memory outside the
+ * Java heap, so that it adds nothing for the garbage collector to trace. It serves holder loads of
+ * recently seen players, such as staff lookups and players rejoining, without a storage round trip.
+ * <p>
+ * Memory is split into equally sized segments, which are filled in turn like a ring. Each entry
+ * holds all vaults of one player, appended to the current segment:
+ * <pre>
+ * [count int] count x [vault number int][length int, -1 if null][stored bytes]
+ * </pre>
+ * Once the last segment is full, the oldest one is cleared and reused, evicting every entry in it.
+ * An updated entry is appended again, leaving its old copy behind until its segment is reused.
+ * Only the location of each entry is kept on the heap.
+ * <p>
+ * An entry is always complete: it is added from a read of all of a player's vaults, and kept up
+ * to date by every write afterwards. A read that raced with a write of the same player isn't added.
+ */
+final class OffHeapVaultCache {
+    private static final int SEGMENTS = 16;
+    // Writes bump the generation of their owner's stripe, so that a read which started before a
+    // write landed can tell it may be stale. Unrelated owners sharing a stripe only skip a fill.
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final ByteBuffer[] segments = new ByteBuffer[SEGMENTS];
+    private final int segmentSize;
+    private final ConcurrentHashMap<UUID, Location> index = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    // Held exclusively while segments are written to; reads are optimistic, and retried under the
+    // read lock if a write happened meanwhile.
+    private final StampedLock lock = new StampedLock();
+    private int current;
+    private int position;
+    private long liveBytes;
+
+    /**
+     * Constructs a cache holding up to the given number of bytes. Segments are allocated as they are first used.
+     *
+     * @param capacityBytes the direct memory the cache may use
+     */
+    OffHeapVaultCache(long capacityBytes) {
+        this.segmentSize = (int) Math.max(1024, Math.min(capacityBytes / SEGMENTS, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Retrieves the stored bytes of all vaults of a player.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @return the stored bytes of each vault, by vault number, or {@code null} if the player isn't cached
+     */
+    Map<Integer, byte[]> get(UUID ownerUUID) {
+        long stamp = lock.tryOptimisticRead();
+        Map<Integer, byte[]> vaults = read(ownerUUID);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                vaults = read(ownerUUID);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        VaultMetrics.recordOffHeapLookup(vaults != null);
+        return vaults;
+    }
+
+    /**
+     * Retrieves the write generation of a player, to be captured before reading their vaults from storage.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @return the current generation, to be passed to {@link #fill(UUID, long, Map)}
+     */
+    long generation(UUID ownerUUID) {
+        return generations.get(stripe(ownerUUID));
+    }
+
+    /**
+     * Adds all vaults of a player, as read from storage, unless a write to the player may have
+     * landed since the given generation was captured.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @param generation the generation captured before the vaults were read
+     * @param vaults the stored bytes of each vault, by vault number
+     */
+    void fill(UUID ownerUUID, long generation, Map<Integer, byte[]> vaults) {
+        long stamp = lock.writeLock();
+        try {
+            if (generations.get(stripe(ownerUUID)) != generation || index.containsKey(ownerUUID)) return;
+            append(ownerUUID, vaults);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Records a vault written to or removed from storage, in the entry of its owner if they are cached.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @param vaultNumber the number identifying the specific vault
+     * @param data the stored bytes now in storage, or {@code null} if the vault was removed
+     */
+    void update(UUID ownerUUID, int vaultNumber, byte[] data) {
+        generations.incrementAndGet(stripe(ownerUUID));
+        long stamp = lock.writeLock();
+        try {
+            Map<Integer, byte[]> vaults = read(ownerUUID);
+            if (vaults == null) return;
+            if (data == null) {
+                vaults.remove(vaultNumber);
+            } else {
+                vaults.put(vaultNumber, data);
+            }
+            append(ownerUUID, vaults);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops a player's entry, after a write whose outcome is unknown.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     */
+    void invalidate(UUID ownerUUID) {
+        generations.incrementAndGet(stripe(ownerUUID));
+        long stamp = lock.writeLock();
+        try {
+            Location removed = index.remove(ownerUUID);
+            if (removed != null) {
+                liveBytes -= removed.length();
+                VaultMetrics.setOffHeapCacheBytes(liveBytes);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops every entry and releases the segments, leaving their memory to be freed by the JVM.
+     */
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            index.clear();
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = null;
+            }
+            current = 0;
+            position = 0;
+            liveBytes = 0;
+            VaultMetrics.setOffHeapCacheBytes(0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Decodes a player's entry. May run without the lock, in which case the segment can be
+     * overwritten midway; lengths are bounds-checked, so that only yields a result to be discarded.
+     *
+     * @return the decoded vaults, or {@code null} if the player isn't cached or the entry is inconsistent
+     */
+    private Map<Integer, byte[]> read(UUID ownerUUID) {
+        Location location = index.get(ownerUUID);
+        if (location == null) return null;
+        ByteBuffer segment = segments[location.segment()];
+        if (segment == null) return null;
+
+        ByteBuffer in = segment.slice(location.offset(), location.length());
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / (2 * Integer.BYTES)) return null;
+
+        Map<Integer, byte[]> vaults = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            if (in.remaining() < 2 * Integer.BYTES) return null;
+            int vaultNumber = in.getInt();
+            int length = in.getInt();
+            if (length > in.remaining()) return null;
+
+            byte[] data = null;
+            if (length >= 0) {
+                data = new byte[length];
+                in.get(data);
+            }
+            vaults.put(vaultNumber, data);
+        }
+        return vaults;
+    }
+
+    /**
+     * Appends a player's entry to the current segment, moving on to the next one if it doesn't fit.
+     * Entries larger than a segment aren't cached. Must hold the write lock.
+     */
+    private void append(UUID ownerUUID, Map<Integer, byte[]> vaults) {
+        int size = Integer.BYTES;
+        for (byte[] data : vaults.values()) {
+            size += 2 * Integer.BYTES + (data == null ? 0 : data.length);
+        }
+
+        Location previous = index.remove(ownerUUID);
+        if (previous != null) liveBytes -= previous.length();
+        if (size <= segmentSize) {
+            if (segments[current] == null || position + size > segmentSize) {
+                advance();
+            }
+
+            ByteBuffer out = segments[current].slice(position, size);
+            out.putInt(vaults.size());
+            for (Map.Entry<Integer, byte[]> vault : vaults.entrySet()) {
+                out.putInt(vault.getKey());
+                out.putInt(vault.getValue() == null ? -1 : vault.getValue().length);
+                if (vault.getValue() != null) out.put(vault.getValue());
+            }
+            index.put(ownerUUID, new Location(current, position, size));
+            position += size;
+            liveBytes += size;
+        }
+        VaultMetrics.setOffHeapCacheBytes(liveBytes);
+    }
+
+    /**
+     * Moves on to the next segment, evicting every entry in it. Must hold the write lock.
+     */
+    private void advance() {
+        if (segments[current] != null) {
+            current = (current + 1) % SEGMENTS;
+        }
+        position = 0;
+        if (segments[current] == null) {
+            segments[current] = ByteBuffer.allocateDirect(segmentSize);
+            return;
+        }
+
+        for (Iterator<Location> it = index.values().iterator(); it.hasNext(); ) {
+            Location location = it.next();
+            if (location.segment() == current) {
+                liveBytes -= location.length();
+                it.remove();
+            }
+        }
+    }
+
+    private static int stripe(UUID ownerUUID) {
+        return (ownerUUID.hashCode() & 0x7FFFFFFF) % GENERATION_STRIPES;
+    }
+
+    private record Location(int segment, int offset, int length) {
+    }
+
+}
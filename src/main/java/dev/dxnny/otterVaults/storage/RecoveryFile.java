@@ -0,0 +1,105 @@
+package dev.dxnny.otterVaults.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Holds the vaults a shutdown couldn't write to storage in time, until they are replayed on
+ * the next start. The file is a header, one record per vault, and a trailing CRC32C over
+ * everything before it:
+ * <pre>
+ * [magic int][version byte][count int]
+ * count x [msb long][lsb long][vault number int][length int][stored bytes]
+ * [crc32c int]
+ * </pre>
+ * It is written to a temporary file and moved into place, so it is either complete or absent.
+ */
+final class RecoveryFile {
+    private static final int MAGIC = 0x4F565246;
+    private static final byte VERSION = 1;
+
+    private RecoveryFile() {
+    }
+
+    /**
+     * Writes the given vaults, replacing any existing recovery file.
+     *
+     * @param file the recovery file
+     * @param vaults the vaults with their stored bytes, possibly compressed
+     */
+    static void write(Path file, List<Entry> vaults) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(vaults.size());
+            for (Entry vault : vaults) {
+                out.writeLong(vault.ownerUUID().getMostSignificantBits());
+                out.writeLong(vault.ownerUUID().getLeastSignificantBits());
+                out.writeInt(vault.vaultNumber());
+                out.writeInt(vault.data().length);
+                out.write(vault.data());
+            }
+        }
+
+        byte[] body = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        ByteBuffer contents = ByteBuffer.allocate(body.length + Integer.BYTES).put(body).putInt((int) crc.getValue());
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, contents.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the vaults in a recovery file.
+     *
+     * @param file the recovery file
+     * @return the vaults with their stored bytes
+     * @throws IOException if the file can't be read, or fails its checksum
+     */
+    static List<Entry> read(Path file) throws IOException {
+        byte[] contents = Files.readAllBytes(file);
+        if (contents.length < Integer.BYTES) throw new IOException("Recovery file is truncated");
+
+        CRC32C crc = new CRC32C();
+        crc.update(contents, 0, contents.length - Integer.BYTES);
+        if ((int) crc.getValue() != ByteBuffer.wrap(contents, contents.length - Integer.BYTES, Integer.BYTES).getInt()) {
+            throw new IOException("Recovery file failed its checksum");
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents, 0, contents.length - Integer.BYTES))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a recovery file");
+            byte version = in.readByte();
+            if (version != VERSION) throw new IOException("Unsupported recovery file version " + version);
+
+            int count = in.readInt();
+            List<Entry> vaults = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                UUID ownerUUID = new UUID(in.readLong(), in.readLong());
+                int vaultNumber = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                vaults.add(new Entry(ownerUUID, vaultNumber, data));
+            }
+            return vaults;
+        }
+    }
+
+    record Entry(UUID ownerUUID, int vaultNumber, byte[] data) {
+    }
+
+}
@@ -0,0 +1,73 @@
+package dev.dxnny.otterVaults.storage;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Logger;
+
+/**
+ * A versioned change to the database schema, applied once and in order by {@link SchemaMigrator}.
+ */
+public interface SchemaMigration {
+
+    /**
+     * @return the schema version this migration brings the database to
+     */
+    int version();
+
+    /**
+     * @return a short description, recorded alongside the version
+     */
+    String description();
+
+    /**
+     * Applies the blocking part of the migration on startup, such as creating tables.
+     * Must be safe to run again if the server stopped before the migration was recorded.
+     *
+     * @param conn the connection to apply the migration on
+     * @param dialect the database being migrated
+     * @param dataSource the pool the background job may take connections from
+     * @param logger the logger used to report progress and errors
+     * @return a job that finishes the migration in the background, such as copying existing rows,
+     *         or {@code null} if the migration is complete. The version is recorded once the job completes.
+     */
+    Job apply(Connection conn, SqlDialect dialect, DataSource dataSource, Logger logger) throws SQLException;
+
+    /**
+     * The part of a migration that runs in the background, so that large tables don't hold up startup.
+     */
+    interface Job {
+
+        /**
+         * Runs the job until it completes or is stopped.
+         *
+         * @return {@code true} if the migration is complete, and its version may be recorded
+         */
+        boolean run();
+
+        /**
+         * Stops the job after the chunk currently being processed.
+         * It is started again on the next startup.
+         */
+        void stop();
+
+        /**
+         * @return how long to wait after the migration is recorded before {@link #finish(Connection)} runs,
+         *         so that reads which started beforehand can complete, in milliseconds
+         */
+        default long finishDelayMillis() {
+            return 0;
+        }
+
+        /**
+         * Runs once the migration has been recorded, and storage no longer reads what it replaced.
+         * Runs early, without the full delay, if the server stops in the meantime.
+         *
+         * @param conn the connection to clean up on
+         */
+        default void finish(Connection conn) throws SQLException {
+        }
+
+    }
+
+}
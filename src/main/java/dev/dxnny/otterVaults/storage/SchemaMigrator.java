@@ -0,0 +1,167 @@
+package dev.dxnny.otterVaults.storage;
+
+import lombok.Getter;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Brings the database schema up to date, tracking the applied version in the
+ * {@code schema_version} table. Migrations run in version order; one with a background
+ * job holds back the migrations after it until the job has completed.
+ */
+public class SchemaMigrator {
+    private final List<SchemaMigration> migrations = List.of(new BinaryUuidMigration(), new DeltaTableMigration(), new ItemIndexMigration());
+
+    private final DataSource dataSource;
+    private final SqlDialect dialect;
+    private final Logger logger;
+    private final StorageExecutor executor;
+    // Completed once every migration has been applied.
+    @Getter
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    @Getter
+    private volatile int version;
+    // The latest version whose blocking part has been applied, though its background job may still be running.
+    private volatile int started;
+    private volatile SchemaMigration.Job runningJob;
+    private volatile boolean stopped;
+    // The cleanup of a recorded migration, while waiting out its delay.
+    private final AtomicReference<Runnable> pendingFinish = new AtomicReference<>();
+
+    public SchemaMigrator(DataSource dataSource, SqlDialect dialect, Logger logger, StorageExecutor executor) {
+        this.dataSource = dataSource;
+        this.dialect = dialect;
+        this.logger = logger;
+        this.executor = executor;
+    }
+
+    /**
+     * Reads the current schema version, and applies pending migrations.
+     * Background jobs are started on the storage executor rather than waited for.
+     */
+    public void migrate() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INT NOT NULL PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "applied_at BIGINT NOT NULL" +
+                    ")"
+            );
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                rs.next();
+                version = rs.getInt(1);
+                started = version;
+            }
+        }
+        applyPending();
+    }
+
+    /**
+     * @return {@code true} if the given schema version has been fully applied
+     */
+    public boolean isApplied(int version) {
+        return this.version >= version;
+    }
+
+    /**
+     * @return {@code true} if the blocking part of the given schema version has been applied,
+     *         such as creating its tables, even if its background job is still running
+     */
+    public boolean isStarted(int version) {
+        return started >= version;
+    }
+
+    /**
+     * Stops the running background job, if any. Its migration resumes on the next startup.
+     */
+    public void stop() {
+        stopped = true;
+        SchemaMigration.Job job = runningJob;
+        if (job != null) {
+            job.stop();
+        }
+        // The migration is already recorded, so its cleanup wouldn't otherwise run again.
+        Runnable finish = pendingFinish.getAndSet(null);
+        if (finish != null) {
+            finish.run();
+        }
+    }
+
+    private void applyPending() throws SQLException {
+        for (SchemaMigration migration : migrations) {
+            if (migration.version() <= version) continue;
+
+            SchemaMigration.Job job;
+            try (Connection conn = dataSource.getConnection()) {
+                job = migration.apply(conn, dialect, dataSource, logger);
+            }
+            started = migration.version();
+            if (job != null) {
+                startJob(migration, job);
+                return;
+            }
+            record(migration);
+        }
+        completion.complete(null);
+    }
+
+    private void startJob(SchemaMigration migration, SchemaMigration.Job job) {
+        runningJob = job;
+        logger.info("Migrating the database in the background: " + migration.description());
+        executor.submitBackground(() -> {
+            if (!job.run() || stopped) return;
+            try {
+                record(migration);
+                runningJob = null;
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Error while migrating the database to version " + migration.version() + "!", e);
+                return;
+            }
+
+            // Waited out off the executor, so the delay holds neither a connection nor a permit.
+            Runnable finish = () -> finishJob(migration, job);
+            pendingFinish.set(finish);
+            CompletableFuture.delayedExecutor(job.finishDelayMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                if (pendingFinish.compareAndSet(finish, null)) {
+                    executor.submit(StorageExecutor.Priority.LOW, finish);
+                }
+            });
+        });
+    }
+
+    private void finishJob(SchemaMigration migration, SchemaMigration.Job job) {
+        try {
+            try (Connection conn = dataSource.getConnection()) {
+                job.finish(conn);
+            }
+            if (!stopped) applyPending();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error while migrating the database to version " + migration.version() + "!", e);
+        }
+    }
+
+    private void record(SchemaMigration migration) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+            ps.setInt(1, migration.version());
+            ps.setString(2, migration.description());
+            ps.setLong(3, System.currentTimeMillis());
+            ps.executeUpdate();
+        }
+        version = migration.version();
+        logger.info("Migrated the database to schema version " + version + ".");
+    }
+
+}
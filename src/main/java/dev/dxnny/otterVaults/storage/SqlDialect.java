@@ -0,0 +1,93 @@
+package dev.dxnny.otterVaults.storage;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * The SQL differences between the databases {@link JdbcVaultStorage} supports.
+ */
+@Getter
+public enum SqlDialect {
+    H2("org.h2.Driver", "UUID", "BLOB", "RAND()", " FOR UPDATE",
+            "MERGE INTO vaults (player_uuid, vault_number, data, last_modified, byte_size) KEY (player_uuid, vault_number) VALUES (?, ?, ?, ?, ?)"),
+    SQLITE("org.sqlite.JDBC", "BLOB", "BLOB", "RANDOM()", "",
+            "INSERT INTO vaults (player_uuid, vault_number, data, last_modified, byte_size) VALUES (?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (player_uuid, vault_number) DO UPDATE SET data = excluded.data, " +
+                    "last_modified = excluded.last_modified, byte_size = excluded.byte_size"),
+    // BLOB is capped at 64KiB in MariaDB, which a full vault of shulker boxes can exceed.
+    MARIADB("org.mariadb.jdbc.Driver", "BINARY(16)", "LONGBLOB", "RAND()", " FOR UPDATE",
+            "INSERT INTO vaults (player_uuid, vault_number, data, last_modified, byte_size) VALUES (?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE data = VALUES(data), last_modified = VALUES(last_modified), byte_size = VALUES(byte_size)"),
+    POSTGRESQL("org.postgresql.Driver", "UUID", "BYTEA", "RANDOM()", " FOR UPDATE",
+            "INSERT INTO vaults (player_uuid, vault_number, data, last_modified, byte_size) VALUES (?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (player_uuid, vault_number) DO UPDATE SET data = EXCLUDED.data, " +
+                    "last_modified = EXCLUDED.last_modified, byte_size = EXCLUDED.byte_size");
+
+    private final String driverClassName;
+    // H2 and PostgreSQL have a native UUID type; the others store the 16 raw bytes.
+    private final String uuidType;
+    private final String blobType;
+    private final String randomFunction;
+    // Appended to row reads that must hold the row until the transaction ends; SQLite locks the whole database instead.
+    private final String lockClause;
+    private final String upsertVaultSql;
+
+    SqlDialect(String driverClassName, String uuidType, String blobType, String randomFunction, String lockClause, String upsertVaultSql) {
+        this.driverClassName = driverClassName;
+        this.uuidType = uuidType;
+        this.blobType = blobType;
+        this.randomFunction = randomFunction;
+        this.lockClause = lockClause;
+        this.upsertVaultSql = upsertVaultSql;
+    }
+
+    /**
+     * Binds a UUID to a {@link #getUuidType() UUID column} parameter.
+     */
+    public void setUuid(PreparedStatement ps, int index, UUID uuid) throws SQLException {
+        if (uuidType.equals("UUID")) {
+            ps.setObject(index, uuid);
+            return;
+        }
+        ps.setBytes(index, ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array());
+    }
+
+    /**
+     * Reads a UUID from a {@link #getUuidType() UUID column}.
+     */
+    public UUID getUuid(ResultSet rs, String column) throws SQLException {
+        if (uuidType.equals("UUID")) {
+            return rs.getObject(column, UUID.class);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(rs.getBytes(column));
+        return new UUID(bytes.getLong(), bytes.getLong());
+    }
+
+    /**
+     * Resolves the {@code storage.backend} configured for a database.
+     *
+     * @param name the configured backend name
+     * @return the dialect of the named database
+     * @throws IllegalArgumentException if the name isn't a supported database, so that a typo
+     *         fails on startup instead of silently storing vaults in another database
+     */
+    public static SqlDialect fromName(String name) {
+        return switch (name.trim().toLowerCase()) {
+            case "h2" -> H2;
+            case "sqlite" -> SQLITE;
+            case "mariadb", "mysql" -> MARIADB;
+            case "postgresql", "postgres" -> POSTGRESQL;
+            default -> throw new IllegalArgumentException("Unknown storage.backend '" + name
+                    + "', expected one of: h2, sqlite, mariadb, postgresql, log, memory");
+        };
+    }
+
+}
@@ -0,0 +1,12 @@
+package dev.dxnny.otterVaults.storage;
+
+/**
+ * Thrown by storage backends when reading or writing vault data fails.
+ */
+public class StorageException extends Exception {
+
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,333 @@
+package dev.dxnny.otterVaults.storage;
+
+import org.bukkit.Bukkit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs storage I/O on virtual threads. Submitted work waits in a bounded priority queue,
+ * and at most {@code maxConcurrentTasks} tasks run at once, matching the connection pool,
+ * so tasks never queue up inside Hikari instead. The limit may be lowered and raised again
+ * while running, see {@link ConcurrencyTuner}. Higher priority lanes are always
+ * dispatched before lower ones, and tasks within a lane run in submission order.
+ * Long-running background jobs, such as migrations, run outside of the limit.
+ */
+public class StorageExecutor {
+
+    public enum Priority {
+        /** Work a player is waiting on, such as join-time holder loads and vault opens. */
+        HIGH,
+        /** Regular work, such as bulk loads and admin commands. */
+        NORMAL,
+        /** Background work, such as saves and migrations. */
+        LOW
+    }
+
+    private final Logger logger;
+    private final int maxConcurrentTasks;
+    private volatile int concurrencyLimit;
+    private final PriorityBlockingQueue<QueuedTask> queue = new PriorityBlockingQueue<>();
+    private final Semaphore capacity;
+    private final AdjustableSemaphore concurrency;
+    private final ExecutorService workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("OtterVaults-IO-", 0).factory());
+    private final Thread dispatcher;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean running = true;
+
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder overflowCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Constructs a storage executor.
+     *
+     * @param logger the logger used to report failing tasks
+     * @param maxConcurrentTasks the maximum number of tasks running at once; should match the connection pool size
+     * @param queueCapacity the maximum number of tasks waiting to run before submitters are blocked
+     */
+    public StorageExecutor(Logger logger, int maxConcurrentTasks, int queueCapacity) {
+        this.logger = logger;
+        this.maxConcurrentTasks = Math.max(1, maxConcurrentTasks);
+        this.concurrencyLimit = this.maxConcurrentTasks;
+        this.concurrency = new AdjustableSemaphore(this.maxConcurrentTasks);
+        this.capacity = new Semaphore(Math.max(1, queueCapacity));
+        this.dispatcher = Thread.ofPlatform().name("OtterVaults-IO-Dispatcher").daemon().start(this::dispatch);
+    }
+
+    /**
+     * Submits a task with {@link Priority#NORMAL} priority.
+     *
+     * @param task The {@code Runnable} task to be executed.
+     */
+    public void submitTask(Runnable task) {
+        submit(Priority.NORMAL, task);
+    }
+
+    /**
+     * Submits a task to be executed on a virtual thread.
+     * When the queue is full, submitting threads block until space frees up. The server's
+     * main thread is never blocked: its tasks are admitted past the bound and counted as overflow.
+     * Once the executor is shut down, tasks are run on the calling thread instead.
+     *
+     * @param priority the lane the task is queued in
+     * @param task The {@code Runnable} task to be executed.
+     */
+    public void submit(Priority priority, Runnable task) {
+        if (!running) {
+            task.run();
+            return;
+        }
+
+        boolean holdsCapacity;
+        if (Bukkit.isPrimaryThread()) {
+            holdsCapacity = capacity.tryAcquire();
+            if (!holdsCapacity) overflowCount.increment();
+        } else {
+            try {
+                capacity.acquire();
+                holdsCapacity = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                task.run();
+                return;
+            }
+        }
+
+        queue.add(new QueuedTask(priority, sequence.getAndIncrement(), System.nanoTime(), holdsCapacity, false, task));
+    }
+
+    /**
+     * Submits a long-running background job, such as a migration. It is dispatched from the
+     * {@link Priority#LOW} lane, but gives its permit back as soon as it starts, so it neither
+     * counts against the concurrency limit nor keeps the tasks after it waiting while it runs.
+     * Its connection comes from the pool's headroom beyond the limit.
+     * Once the executor is shut down, the job is run on the calling thread instead.
+     *
+     * @param job the job to be executed
+     */
+    public void submitBackground(Runnable job) {
+        if (!running) {
+            job.run();
+            return;
+        }
+        queue.add(new QueuedTask(Priority.LOW, sequence.getAndIncrement(), System.nanoTime(), false, true, job));
+    }
+
+    /**
+     * Submits a task producing a value to be executed on a virtual thread.
+     *
+     * @param priority the lane the task is queued in
+     * @param supplier the task producing the value
+     * @return a future completed with the task's result, or exceptionally if the task throws
+     */
+    public <T> CompletableFuture<T> supply(Priority priority, Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submit(priority, () -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Retrieves the number of tasks waiting to be dispatched.
+     *
+     * @return the current queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Retrieves the number of tasks currently running.
+     *
+     * @return the number of running tasks
+     */
+    public int getActiveCount() {
+        return concurrencyLimit - concurrency.availablePermits();
+    }
+
+    /**
+     * Retrieves the number of tasks allowed to run at once.
+     *
+     * @return the current concurrency limit
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Changes the number of tasks allowed to run at once. Lowering the limit doesn't interrupt
+     * running tasks; no new task starts until enough of them have completed.
+     *
+     * @param limit the new limit, clamped between 1 and {@code maxConcurrentTasks}
+     */
+    public synchronized void setConcurrencyLimit(int limit) {
+        int clamped = Math.max(1, Math.min(limit, maxConcurrentTasks));
+        int delta = clamped - concurrencyLimit;
+        if (delta > 0) {
+            concurrency.release(delta);
+        } else if (delta < 0) {
+            concurrency.reducePermits(-delta);
+        }
+        concurrencyLimit = clamped;
+    }
+
+    public long getCompletedCount() {
+        return completedCount.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    /**
+     * Retrieves the total time completed tasks spent queued before starting.
+     *
+     * @return the total queue wait, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    /**
+     * Retrieves the average time tasks spent queued before starting.
+     *
+     * @return the average queue wait, in microseconds
+     */
+    public long getAverageWaitMicros() {
+        long completed = completedCount.sum();
+        return completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum() / completed);
+    }
+
+    /**
+     * Retrieves the longest time a task spent queued before starting.
+     *
+     * @return the maximum queue wait, in microseconds
+     */
+    public long getMaxWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get());
+    }
+
+    /**
+     * Stops accepting new work, and waits for queued and running tasks to complete before
+     * forcefully shutting down. The dispatcher keeps dispatching queued tasks within the
+     * concurrency limit until the timeout; once it has stopped, whatever is still queued runs
+     * on the calling thread. Tasks submitted afterwards run on the calling thread too.
+     *
+     * @param timeoutMillis the longest time to wait for the dispatcher and running tasks, in total
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+        try {
+            dispatcher.join(Math.max(1, remainingMillis(deadline)));
+            if (dispatcher.isAlive()) {
+                logger.warning("Storage tasks didn't finish in time; running the " + queue.size() + " still queued on shutdown.");
+                dispatcher.interrupt();
+                dispatcher.join();
+            }
+
+            // The dispatcher has stopped, so anything still queued runs here instead.
+            QueuedTask task;
+            while ((task = queue.poll()) != null) {
+                task.runnable().run();
+            }
+
+            workers.shutdown();
+            if (!workers.awaitTermination(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            dispatcher.interrupt();
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    private void dispatch() {
+        while (running || !queue.isEmpty()) {
+            QueuedTask task;
+            try {
+                // A permit is taken before a task, so the task dispatched is the highest priority one
+                // queued once a permit frees up, not whichever was at the head while the others ran.
+                if (!concurrency.tryAcquire(100, TimeUnit.MILLISECONDS)) continue;
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                concurrency.release();
+                return;
+            }
+            if (task == null) {
+                concurrency.release();
+                continue;
+            }
+
+            if (task.holdsCapacity()) capacity.release();
+            if (task.background()) concurrency.release();
+            workers.execute(() -> run(task));
+        }
+    }
+
+    private void run(QueuedTask task) {
+        // Background jobs are left out of the statistics the tuner samples.
+        if (!task.background()) {
+            long waitNanos = System.nanoTime() - task.enqueuedAt();
+            totalWaitNanos.add(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+        try {
+            task.runnable().run();
+        } catch (Throwable t) {
+            logger.log(Level.SEVERE, "Error while running a storage task!", t);
+        } finally {
+            if (!task.background()) {
+                completedCount.increment();
+                concurrency.release();
+            }
+        }
+    }
+
+    private static final class AdjustableSemaphore extends Semaphore {
+        private AdjustableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    private record QueuedTask(Priority priority, long sequence, long enqueuedAt, boolean holdsCapacity, boolean background, Runnable runnable)
+            implements Comparable<QueuedTask> {
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+}
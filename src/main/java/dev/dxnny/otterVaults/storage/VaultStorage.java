@@ -0,0 +1,252 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.config.Options;
+import dev.dxnny.otterVaults.managers.Vault;
+import dev.dxnny.otterVaults.managers.VaultHolder;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * A backend vaults are persisted in. The synchronous methods block on I/O and should
+ * be called from the storage executor; the asynchronous ones run there themselves.
+ * Errors are logged by the backend, and reported as {@code null} or {@code -1} results.
+ */
+public interface VaultStorage {
+
+    /**
+     * Creates the storage backend selected by {@code storage.backend} in the config.
+     *
+     * @param dataFolder the plugin's data folder, where embedded backends store their files
+     * @param logger the logger used to report storage errors
+     * @param executor the executor asynchronous operations and background jobs are run on
+     * @return the configured storage backend
+     */
+    static VaultStorage create(File dataFolder, Logger logger, StorageExecutor executor) {
+        String backend = Options.getSTORAGE_BACKEND();
+        if (backend.equalsIgnoreCase("memory")) {
+            return new MemoryVaultStorage(logger, executor);
+        }
+        if (backend.equalsIgnoreCase("log")) {
+            return new LogVaultStorage(new File(dataFolder, "vaults"), logger, executor);
+        }
+        return new JdbcVaultStorage(SqlDialect.fromName(backend), dataFolder, logger, executor);
+    }
+
+    /**
+     * Loads a specific vault. Its inventory is only decoded the first time it is opened.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @param vaultNumber the number identifying the specific vault
+     * @return the stored {@code Vault}, or {@code null} if it doesn't exist or an error occurred
+     */
+    Vault loadVault(UUID ownerUUID, int vaultNumber);
+
+    /**
+     * Loads all vaults of a player into a {@code VaultHolder}.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @return a {@code VaultHolder} containing the player's vaults, which is empty if none
+     *         are stored or an error occurred
+     */
+    VaultHolder loadVaultHolder(UUID ownerUUID);
+
+    /**
+     * Loads the vaults of many players at once, with a few bulk reads instead of one per player.
+     *
+     * @param ownerUUIDs the UUIDs of the vault owners
+     * @return a {@code VaultHolder} for each owner, or {@code null} if an error occurred
+     */
+    Map<UUID, VaultHolder> loadVaultHolders(Collection<UUID> ownerUUIDs);
+
+    /**
+     * Saves the specified vault, if it has unsaved modifications.
+     *
+     * @param vault the {@code Vault} instance to be saved
+     */
+    void saveVault(Vault vault);
+
+    /**
+     * Saves the specified vaults in a single transaction, skipping those without unsaved modifications.
+     *
+     * @param vaults the {@code Vault} instances to be saved
+     * @return the number of vaults written, or {@code -1} if the transaction failed
+     */
+    int saveVaults(Collection<Vault> vaults);
+
+    /**
+     * Deletes a stored vault.
+     *
+     * @param ownerUUID the UUID of the vault owner
+     * @param vaultNumber the number identifying the specific vault
+     * @return {@code true} if a stored vault was deleted
+     */
+    boolean deleteVault(UUID ownerUUID, int vaultNumber);
+
+    /**
+     * Loads a specific vault on the storage executor, as work a player is waiting on.
+     *
+     * @see #loadVault(UUID, int)
+     */
+    CompletableFuture<Vault> loadVaultAsync(UUID ownerUUID, int vaultNumber);
+
+    /**
+     * Loads all vaults of a player on the storage executor, as work a player is waiting on.
+     *
+     * @see #loadVaultHolder(UUID)
+     */
+    CompletableFuture<VaultHolder> loadVaultHolderAsync(UUID ownerUUID);
+
+    /**
+     * Loads the vaults of many players on the storage executor, split into chunks that are
+     * read in parallel. Owners whose chunk failed to load are left out of the result.
+     *
+     * @see #loadVaultHolders(Collection)
+     */
+    CompletableFuture<Map<UUID, VaultHolder>> loadVaultHoldersAsync(Collection<UUID> ownerUUIDs);
+
+    /**
+     * Saves the specified vault in the background, if it has unsaved modifications.
+     * With write-behind enabled, the save is grouped with other pending saves.
+     *
+     * @param vault the {@code Vault} instance to be saved
+     */
+    void saveVaultAsync(Vault vault);
+
+    /**
+     * Saves the specified vaults in a single transaction in the background.
+     *
+     * @see #saveVaults(Collection)
+     */
+    CompletableFuture<Integer> saveVaultsAsync(Collection<Vault> vaults);
+
+    /**
+     * Serializes the current contents of a vault with unsaved modifications, to be written later by
+     * {@link #saveCheckpointsAsync(Collection)}. Reads the live inventory, so must be called on the main thread.
+     *
+     * @param vault the {@code Vault} instance to be checkpointed
+     * @return the serialized vault, or {@code null} if it has nothing to write
+     */
+    Checkpoint checkpointVault(Vault vault);
+
+    /**
+     * Writes vaults serialized by {@link #checkpointVault(Vault)} in a single transaction in the background.
+     * A checkpoint of a vault that has since been saved by a newer write is skipped, so it never rolls that write back.
+     *
+     * @param checkpoints the serialized vaults
+     * @return the number of vaults written, or {@code -1} if the transaction failed
+     */
+    CompletableFuture<Integer> saveCheckpointsAsync(Collection<Checkpoint> checkpoints);
+
+    /**
+     * Saves the specified vaults on shutdown, within a deadline. Their contents are copied on the
+     * calling thread, which must be the main thread, and then serialized and written in parallel
+     * batches. Vaults not written by the deadline are written to the recovery file instead, to be
+     * saved by {@link #replayRecovery(File)} on the next start.
+     *
+     * @param vaults the {@code Vault} instances to be saved
+     * @param timeoutMillis how long to wait for the writes, in milliseconds
+     * @param recoveryFile the file vaults not written in time are kept in
+     * @return the number of vaults written to storage
+     */
+    int flushVaults(Collection<Vault> vaults, long timeoutMillis, File recoveryFile);
+
+    /**
+     * Saves the vaults a previous shutdown left in the recovery file, then deletes it.
+     * Must be called on startup, before any vault is loaded.
+     *
+     * @param recoveryFile the file written by {@link #flushVaults(Collection, long, File)}
+     */
+    void replayRecovery(File recoveryFile);
+
+    /**
+     * Deletes a stored vault on the storage executor.
+     *
+     * @see #deleteVault(UUID, int)
+     */
+    CompletableFuture<Boolean> deleteVaultAsync(UUID ownerUUID, int vaultNumber);
+
+    /**
+     * Trains a new compression dictionary from a sample of stored vaults, stores it,
+     * and makes it the active dictionary for newly written vaults.
+     *
+     * @param sampleSize the maximum number of vaults to sample
+     * @return the id of the new dictionary, or {@code -1} if there was nothing to train on or an error occurred
+     */
+    int trainDictionary(int sampleSize);
+
+    /**
+     * Searches every stored vault for an item, through the backend's item index.
+     *
+     * @param material the name of the item's {@link org.bukkit.Material}
+     * @param component the key of an enchantment the items must carry, such as {@code minecraft:mending},
+     *                  or an empty string to count every item of the material
+     * @param offset the number of results to skip
+     * @param limit the most results to return
+     * @return the vaults holding the item, largest amounts first, or {@code null} if the backend
+     *         has no item index or an error occurred
+     */
+    List<ItemMatch> searchItems(String material, String component, int offset, int limit);
+
+    /**
+     * Searches every stored vault for an item on the storage executor.
+     *
+     * @see #searchItems(String, String, int, int)
+     */
+    CompletableFuture<List<ItemMatch>> searchItemsAsync(String material, String component, int offset, int limit);
+
+    /**
+     * Determines if the item index covers every stored vault. It doesn't while vaults stored
+     * before it existed are still being indexed in the background.
+     *
+     * @return {@code true} if searches see every vault
+     */
+    boolean isItemIndexComplete();
+
+    /**
+     * Starts a background job that rewrites legacy vault blobs in place using the
+     * compact vault format. Backends that can't hold legacy blobs do nothing.
+     */
+    default void migrateLegacyBlobs() {
+    }
+
+    /**
+     * Resizes the backend's connection pool to match a new storage executor concurrency.
+     * Backends without a connection pool ignore this.
+     *
+     * @param concurrency the number of storage tasks now run at once
+     */
+    void resizePool(int concurrency);
+
+    /**
+     * Stops long-running background jobs, so they don't hold up the storage executor's shutdown.
+     */
+    void stopBackgroundTasks();
+
+    /**
+     * Writes any pending saves and releases the backend's resources.
+     * Must be called after the storage executor has shut down.
+     */
+    void disable();
+
+    /**
+     * A vault serialized on the main thread, waiting to be written.
+     */
+    interface Checkpoint {
+        Vault vault();
+    }
+
+    /**
+     * A vault holding a searched item.
+     *
+     * @param amount the number of matching items in the vault, including those inside shulker boxes and bundles
+     */
+    record ItemMatch(UUID ownerUUID, int vaultNumber, int amount) {
+    }
+
+}
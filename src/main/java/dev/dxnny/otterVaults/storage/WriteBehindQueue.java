@@ -0,0 +1,195 @@
+package dev.dxnny.otterVaults.storage;
+
+import dev.dxnny.otterVaults.OtterVaults;
+import dev.dxnny.otterVaults.managers.Vault;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class WriteBehindQueue {
+    // Flushes a vault may fail on its own before its queued save is dropped.
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final AbstractVaultStorage storage;
+    private final StorageExecutor executor;
+    private final Logger logger;
+    private final long maxLatencyMs;
+    private final int maxBatchSize;
+    // Vaults are deduplicated, so repeated saves of the same vault collapse into one row of the latest copy.
+    private final Map<Vault, AbstractVaultStorage.VaultCopy> pending = new ConcurrentHashMap<>();
+    // Failed flushes per vault, reset once it is written.
+    private final Map<Vault, Integer> failures = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private final ScheduledExecutorService timer;
+
+    @Getter
+    private final AtomicLong batchCount = new AtomicLong();
+    @Getter
+    private final AtomicLong rowCount = new AtomicLong();
+    @Getter
+    private final AtomicLong totalBatchNanos = new AtomicLong();
+    @Getter
+    private volatile int lastBatchRows;
+    @Getter
+    private volatile long lastBatchMicros;
+
+    /**
+     * Constructs a write-behind queue that groups pending vault saves into batched transactions.
+     *
+     * @param storage the storage the batches are written to
+     * @param executor the executor batches are written on, as background work
+     * @param logger the logger used to report slow or failed batches
+     * @param maxLatencyMs the longest a queued save may wait before being written, in milliseconds
+     * @param maxBatchSize the number of pending saves that triggers an early flush, and the largest batch written at once
+     */
+    public WriteBehindQueue(AbstractVaultStorage storage, StorageExecutor executor, Logger logger, long maxLatencyMs, int maxBatchSize) {
+        this.storage = storage;
+        this.executor = executor;
+        this.logger = logger;
+        this.maxLatencyMs = Math.max(1, maxLatencyMs);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OtterVaults-WriteBehind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::requestFlush, this.maxLatencyMs, this.maxLatencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the given copy of a vault's contents to be saved in the next batch, replacing any
+     * older copy of the same vault still pending.
+     * If enough saves are pending to fill a batch, a flush is triggered immediately.
+     *
+     * @param copy the contents to be saved, copied on the main thread
+     */
+    void enqueue(AbstractVaultStorage.VaultCopy copy) {
+        pending.merge(copy.vault(), copy, WriteBehindQueue::latest);
+        if (pending.size() >= maxBatchSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Queues a flush on the storage executor, unless one is already waiting to run.
+     */
+    private void requestFlush() {
+        if (pending.isEmpty() || !flushQueued.compareAndSet(false, true)) return;
+        executor.submit(StorageExecutor.Priority.LOW, () -> {
+            flushQueued.set(false);
+            flush();
+        });
+    }
+
+    /**
+     * Retrieves the number of saves currently waiting to be written.
+     *
+     * @return the number of pending saves
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Drains all pending saves, writing them in batches of at most {@code maxBatchSize}.
+     * If a batch fails, its vaults are written one at a time, so a single vault that can't
+     * be written doesn't hold back the rest. Vaults that still fail are re-queued for the
+     * next flush, until they have failed {@link #MAX_ATTEMPTS} times.
+     */
+    public synchronized void flush() {
+        List<AbstractVaultStorage.VaultCopy> retries = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            List<AbstractVaultStorage.VaultCopy> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+            Iterator<AbstractVaultStorage.VaultCopy> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < maxBatchSize) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+
+            long startTime = System.nanoTime();
+            int written = storage.saveCopies(batch);
+            long duration = System.nanoTime() - startTime;
+
+            if (written < 0) {
+                written = saveIndividually(batch, retries);
+                duration = System.nanoTime() - startTime;
+            }
+            recordBatch(batch.size(), written, duration);
+        }
+
+        // Re-queued only once drained, so they wait for the next flush. A newer copy queued meanwhile takes precedence.
+        for (AbstractVaultStorage.VaultCopy copy : retries) {
+            pending.merge(copy.vault(), copy, WriteBehindQueue::latest);
+        }
+    }
+
+    /**
+     * Writes the vaults of a failed batch one at a time.
+     *
+     * @param batch the copies of the failed batch
+     * @param retries the list the copies that failed again, and may be retried, are added to
+     * @return the number of vaults written
+     */
+    private int saveIndividually(List<AbstractVaultStorage.VaultCopy> batch, List<AbstractVaultStorage.VaultCopy> retries) {
+        int written = 0;
+        for (AbstractVaultStorage.VaultCopy copy : batch) {
+            Vault vault = copy.vault();
+            int rows = storage.saveCopies(List.of(copy));
+            if (rows >= 0) {
+                written += rows;
+                failures.remove(vault);
+                continue;
+            }
+
+            int attempts = failures.merge(vault, 1, Integer::sum);
+            if (attempts < MAX_ATTEMPTS) {
+                retries.add(copy);
+                continue;
+            }
+            failures.remove(vault);
+            // Still dirty, so the vault is saved again when next modified, closed or flushed on shutdown.
+            logger.log(Level.SEVERE, "Dropped the queued save of vault " + vault.getVaultNumber() + " for " + vault.getOwnerUUID()
+                    + " after " + attempts + " failed attempts; its changes are kept in memory but not stored");
+        }
+        return written;
+    }
+
+    /**
+     * Stops the periodic flush and synchronously writes all remaining pending saves.
+     * Must be called before the underlying data source is closed.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        flush();
+    }
+
+    private static AbstractVaultStorage.VaultCopy latest(AbstractVaultStorage.VaultCopy queued, AbstractVaultStorage.VaultCopy copy) {
+        return copy.version() >= queued.version() ? copy : queued;
+    }
+
+    private void recordBatch(int queued, int written, long durationNanos) {
+        batchCount.incrementAndGet();
+        rowCount.addAndGet(written);
+        totalBatchNanos.addAndGet(durationNanos);
+        lastBatchRows = written;
+        lastBatchMicros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        if (durationMs > 100) {
+            logger.warning("Warning: Took " + durationMs + "ms to save a batch of " + written + " vaults");
+        }
+        OtterVaults.debug("Write-behind batch: " + written + "/" + queued + " vaults written in " + lastBatchMicros + "µs");
+    }
+
+}
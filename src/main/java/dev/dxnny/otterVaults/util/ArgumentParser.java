@@ -35,9 +35,13 @@ public class ArgumentParser {
                 if (vaultNumber <= Options.getMAX_VAULT_COUNT())targetUUID = senderUUID;
                 return new VaultCommandArguments(targetUUID, vaultNumber);
             } catch (NumberFormatException ignored) {
-                OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(target);
-                if (targetPlayer.hasPlayedBefore() || targetPlayer.isOnline()) {
-                    targetUUID = targetPlayer.getUniqueId();
+                // A UUID, as linked by search results for owners whose name isn't known.
+                targetUUID = parseUUID(target);
+                if (targetUUID == null) {
+                    OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(target);
+                    if (targetPlayer.hasPlayedBefore() || targetPlayer.isOnline()) {
+                        targetUUID = targetPlayer.getUniqueId();
+                    }
                 }
             }
         }
@@ -54,4 +58,14 @@ public class ArgumentParser {
 
         return new VaultCommandArguments(targetUUID, vaultNumber);
     }
+
+    private static UUID parseUUID(String input) {
+        // UUID.fromString also accepts shortened groups, which no player name or UUID looks like.
+        if (input.length() != 36) return null;
+        try {
+            return UUID.fromString(input);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,321 @@
+package dev.dxnny.otterVaults.util;
+
+import lombok.Getter;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Compressed vault frame:
+ *   [magic][codec id][dictionary id, int][uncompressed length, int][payload]
+ * Blobs stored with the NONE codec are written without a frame, so existing rows stay readable.
+ */
+public class Compression {
+
+    static final byte FRAME_MAGIC = (byte) 0x5A;
+    private static final int HEADER_LENGTH = 10;
+    // Deflate only looks back 32KiB, so larger dictionaries would be wasted.
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    @Getter
+    public enum Codec {
+        NONE(0),
+        DEFLATE(1),
+        LZ4(2);
+
+        private final int id;
+
+        Codec(int id) {
+            this.id = id;
+        }
+
+        public static Codec fromId(int id) {
+            for (Codec codec : values()) {
+                if (codec.id == id) return codec;
+            }
+            throw new IllegalArgumentException("Unknown compression codec " + id);
+        }
+
+        /**
+         * Resolves the configured {@code storage.compression.codec}.
+         *
+         * @param name the configured codec name
+         * @return the named codec
+         * @throws IllegalArgumentException if the name isn't a supported codec, so that a typo
+         *         fails on startup instead of silently turning compression off
+         */
+        public static Codec fromName(String name) {
+            return switch (name.trim().toLowerCase()) {
+                case "none" -> NONE;
+                case "deflate" -> DEFLATE;
+                case "lz4" -> LZ4;
+                default -> throw new IllegalArgumentException("Unknown storage.compression.codec '" + name
+                        + "', expected one of: none, deflate, lz4");
+            };
+        }
+    }
+
+    @Getter
+    private static volatile Codec codec = Codec.NONE;
+    private static volatile int level = Deflater.DEFAULT_COMPRESSION;
+    private static volatile boolean useDictionary;
+    @Getter
+    private static volatile int activeDictionaryId;
+    private static final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder storedBytes = new LongAdder();
+    private static final LongAdder encodeCount = new LongAdder();
+    private static final LongAdder encodeNanos = new LongAdder();
+    private static final LongAdder decodeCount = new LongAdder();
+    private static final LongAdder decodeNanos = new LongAdder();
+
+    /**
+     * Configures the codec used for newly written vault blobs.
+     * Blobs written with any codec remain readable regardless of this setting.
+     *
+     * @param codec the codec used when compressing
+     * @param level the Deflate compression level, from 1 (fastest) to 9 (smallest)
+     * @param useDictionary whether Deflate should use the active trained dictionary
+     */
+    public static void configure(Codec codec, int level, boolean useDictionary) {
+        Compression.codec = codec;
+        Compression.level = Math.max(1, Math.min(9, level));
+        Compression.useDictionary = useDictionary;
+    }
+
+    /**
+     * Registers a trained dictionary, so that blobs compressed with it can be decompressed.
+     *
+     * @param id the id the dictionary is stored under
+     * @param dictionary the dictionary bytes
+     * @param active whether newly written blobs should be compressed with this dictionary
+     */
+    public static void registerDictionary(int id, byte[] dictionary, boolean active) {
+        dictionaries.put(id, dictionary);
+        if (active) activeDictionaryId = id;
+    }
+
+    /**
+     * Compresses serialized vault bytes with the configured codec.
+     * If compression doesn't shrink the bytes, they are returned unframed.
+     *
+     * @param raw the serialized vault bytes
+     * @return the bytes to be stored
+     */
+    public static byte[] compress(byte[] raw) {
+        Codec current = codec;
+        if (raw == null || current == Codec.NONE) return raw;
+
+        long startTime = System.nanoTime();
+        int dictionaryId = current == Codec.DEFLATE && useDictionary ? activeDictionaryId : 0;
+        byte[] payload = switch (current) {
+            case DEFLATE -> deflate(raw, dictionaries.get(dictionaryId));
+            case LZ4 -> LZ4Factory.safeInstance().fastCompressor().compress(raw);
+            case NONE -> raw;
+        };
+
+        byte[] stored = raw;
+        if (payload.length + HEADER_LENGTH < raw.length) {
+            stored = ByteBuffer.allocate(HEADER_LENGTH + payload.length)
+                    .put(FRAME_MAGIC)
+                    .put((byte) current.getId())
+                    .putInt(dictionaryId)
+                    .putInt(raw.length)
+                    .put(payload)
+                    .array();
+        }
+
+        encodeNanos.add(System.nanoTime() - startTime);
+        encodeCount.increment();
+        rawBytes.add(raw.length);
+        storedBytes.add(stored.length);
+        return stored;
+    }
+
+    /**
+     * Decompresses stored vault bytes. Bytes without a compression frame are returned as-is.
+     *
+     * @param stored the stored vault bytes
+     * @return the serialized vault bytes
+     * @throws IllegalArgumentException if the frame is corrupt, truncated, or references an unknown dictionary
+     */
+    public static byte[] decompress(byte[] stored) {
+        if (!isCompressed(stored)) return stored;
+
+        long startTime = System.nanoTime();
+        ByteBuffer header = ByteBuffer.wrap(stored, 0, HEADER_LENGTH);
+        header.get();
+        Codec frameCodec = Codec.fromId(header.get());
+        int dictionaryId = header.getInt();
+        int rawLength = header.getInt();
+        if (rawLength < 0) {
+            throw new IllegalArgumentException("Corrupt compressed vault blob");
+        }
+
+        byte[] raw = switch (frameCodec) {
+            case DEFLATE -> inflate(stored, rawLength, dictionaryId);
+            case LZ4 -> unlz4(stored, rawLength);
+            case NONE -> {
+                if (stored.length - HEADER_LENGTH < rawLength) {
+                    throw new IllegalArgumentException("Truncated compressed vault blob");
+                }
+                byte[] out = new byte[rawLength];
+                System.arraycopy(stored, HEADER_LENGTH, out, 0, rawLength);
+                yield out;
+            }
+        };
+
+        decodeNanos.add(System.nanoTime() - startTime);
+        decodeCount.increment();
+        return raw;
+    }
+
+    /**
+     * Determines if the given stored bytes are wrapped in a compression frame.
+     *
+     * @param stored the stored vault bytes
+     * @return {@code true} if the bytes are compressed
+     */
+    public static boolean isCompressed(byte[] stored) {
+        return stored != null && stored.length >= HEADER_LENGTH && stored[0] == FRAME_MAGIC;
+    }
+
+    /**
+     * Trains a Deflate dictionary from sample vault blobs, by collecting the byte sequences
+     * that repeat most often across the samples. The most frequent sequences are placed at
+     * the end of the dictionary, where Deflate can reference them with the shortest distances.
+     *
+     * @param samples serialized (uncompressed) vault blobs
+     * @param maxSize the maximum dictionary size in bytes
+     * @return the trained dictionary, or an empty array if the samples share no repeated sequences
+     */
+    public static byte[] trainDictionary(List<byte[]> samples, int maxSize) {
+        final int segmentLength = 16;
+        final int stride = 4;
+
+        Map<ByteBuffer, Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            for (int i = 0; i + segmentLength <= sample.length; i += stride) {
+                counts.merge(ByteBuffer.wrap(sample, i, segmentLength), 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<ByteBuffer, Integer>> ranked = new ArrayList<>();
+        for (Map.Entry<ByteBuffer, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1) ranked.add(entry);
+        }
+        ranked.sort(Map.Entry.<ByteBuffer, Integer>comparingByValue().reversed());
+
+        int segments = Math.min(ranked.size(), Math.min(maxSize, MAX_DICTIONARY_SIZE) / segmentLength);
+        byte[] dictionary = new byte[segments * segmentLength];
+        for (int i = 0; i < segments; i++) {
+            // Written back to front, so the most frequent segment ends up last.
+            ranked.get(i).getKey().duplicate().get(dictionary, (segments - 1 - i) * segmentLength, segmentLength);
+        }
+        return dictionary;
+    }
+
+    public static long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    public static long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    public static long getEncodeCount() {
+        return encodeCount.sum();
+    }
+
+    public static long getEncodeNanos() {
+        return encodeNanos.sum();
+    }
+
+    public static long getDecodeCount() {
+        return decodeCount.sum();
+    }
+
+    public static long getDecodeNanos() {
+        return decodeNanos.sum();
+    }
+
+    private static byte[] deflate(byte[] raw, byte[] dictionary) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(raw);
+            deflater.finish();
+
+            byte[] buffer = new byte[Math.max(64, raw.length)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            byte[] out = new byte[length];
+            System.arraycopy(buffer, 0, out, 0, length);
+            return out;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] unlz4(byte[] stored, int rawLength) {
+        byte[] out = new byte[rawLength];
+        try {
+            int length = LZ4Factory.safeInstance().safeDecompressor()
+                    .decompress(stored, HEADER_LENGTH, stored.length - HEADER_LENGTH, out, 0);
+            if (length != rawLength) {
+                throw new IllegalArgumentException("Truncated compressed vault blob");
+            }
+            return out;
+        } catch (LZ4Exception e) {
+            // Reported like the other decode failures, which callers already handle.
+            throw new IllegalArgumentException("Corrupt compressed vault blob", e);
+        }
+    }
+
+    private static byte[] inflate(byte[] stored, int rawLength, int dictionaryId) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, HEADER_LENGTH, stored.length - HEADER_LENGTH);
+            byte[] out = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength) {
+                int read = inflater.inflate(out, length, rawLength - length);
+                if (read == 0 && inflater.needsDictionary()) {
+                    byte[] dictionary = dictionaries.get(dictionaryId);
+                    if (dictionary == null) {
+                        throw new IllegalArgumentException("Missing compression dictionary " + dictionaryId);
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalArgumentException("Truncated compressed vault blob");
+                }
+                length += read;
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed vault blob", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package dev.dxnny.otterVaults.util;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.BundleMeta;
+import org.bukkit.inventory.meta.EnchantmentStorageMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts the items in a vault by material, and by material and enchantment, for the item index.
+ * Items inside shulker boxes and bundles are counted too, so they can't be hidden from a search.
+ */
+public final class ItemCounts {
+    // Shulker boxes can't hold shulker boxes, but bundles can hold bundles.
+    private static final int MAX_DEPTH = 3;
+
+    private ItemCounts() {
+    }
+
+    /**
+     * Counts the items in the given contents.
+     *
+     * @param contents the contents of a vault, with {@code null} for empty slots
+     * @return the total amount of each key found, which is empty if there are no items
+     */
+    public static Map<Key, Integer> count(ItemStack[] contents) {
+        Map<Key, Integer> counts = new HashMap<>();
+        if (contents != null) {
+            count(counts, contents, 1, 0);
+        }
+        return counts;
+    }
+
+    private static void count(Map<Key, Integer> counts, ItemStack[] items, int multiplier, int depth) {
+        for (ItemStack item : items) {
+            if (item == null || item.getType().isAir()) continue;
+
+            String material = item.getType().name();
+            int amount = item.getAmount() * multiplier;
+            counts.merge(new Key(material, ""), amount, Integer::sum);
+            for (Enchantment enchantment : item.getEnchantments().keySet()) {
+                counts.merge(new Key(material, enchantment.getKey().toString()), amount, Integer::sum);
+            }
+            if (!item.hasItemMeta()) continue;
+
+            ItemMeta meta = item.getItemMeta();
+            if (meta instanceof EnchantmentStorageMeta stored) {
+                for (Enchantment enchantment : stored.getStoredEnchants().keySet()) {
+                    counts.merge(new Key(material, enchantment.getKey().toString()), amount, Integer::sum);
+                }
+            }
+            if (depth + 1 >= MAX_DEPTH) continue;
+            if (meta instanceof BlockStateMeta blockState && blockState.hasBlockState() && blockState.getBlockState() instanceof ShulkerBox box) {
+                count(counts, box.getInventory().getContents(), amount, depth + 1);
+            } else if (meta instanceof BundleMeta bundle && bundle.hasItems()) {
+                List<ItemStack> bundled = bundle.getItems();
+                count(counts, bundled.toArray(ItemStack[]::new), amount, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Resolves a material typed by a player, such as {@code diamond_sword}.
+     *
+     * @return the material's index name, or {@code null} if there is no such item
+     */
+    public static String parseMaterial(String input) {
+        Material material = Material.matchMaterial(input);
+        return material == null || !material.isItem() ? null : material.name();
+    }
+
+    /**
+     * Resolves an enchantment typed by a player, such as {@code sharpness} or {@code minecraft:sharpness}.
+     *
+     * @return the enchantment's index name, or {@code null} if there is no such enchantment
+     */
+    public static String parseEnchantment(String input) {
+        NamespacedKey key = NamespacedKey.fromString(input.toLowerCase(Locale.ROOT));
+        return key == null || Registry.ENCHANTMENT.get(key) == null ? null : key.toString();
+    }
+
+    /**
+     * What the item index counts: a material on its own, with an empty {@code component},
+     * or a material carrying an enchantment, with the enchantment's key as {@code component}.
+     */
+    public record Key(String material, String component) {
+    }
+
+}
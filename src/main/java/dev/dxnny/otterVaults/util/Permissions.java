@@ -1,5 +1,6 @@
 package dev.dxnny.otterVaults.util;
 
+import dev.dxnny.otterVaults.OtterVaults;
 import dev.dxnny.otterVaults.config.Options;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
@@ -29,24 +30,38 @@ public class Permissions {
 
     /**
      * Determines whether a player identified by their UUID has a specific number of vaults
-     * available to them based on their permissions.
+     * available to them based on their permissions. Uses the player's cached allowance.
      *
      * @param uuid the UUID of the player whose permissions are being checked
      * @param count the number of vaults to check for in the player's permissions
-     * @return {@code true} if the player exists and has sufficient permissions for the specified
+     * @return {@code true} if the player is online and has sufficient permissions for the specified
      *         number of vaults (or admin permission), {@code false} otherwise
+     * @see dev.dxnny.otterVaults.managers.VaultManager#getVaultAllowance(Player)
      */
     public static boolean hasVaultCount(UUID uuid, Integer count) {
-        OfflinePlayer player = Bukkit.getOfflinePlayer(uuid);
-        if (hasPerm(player, ADMIN)) return true;
+        Player player = Bukkit.getPlayer(uuid);
+        return player != null && OtterVaults.getVaultManager().getVaultAllowance(player) >= count;
+    }
+
+    /**
+     * Calculates the highest vault number the specified player may access, from their
+     * {@code ottervaults.amount.<#>} permissions. Numbers above {@code max_vault_count} are not checked.
+     * This performs a permission check per vault number, so callers should cache the result.
+     *
+     * @param player the player whose permissions are being checked
+     * @return the highest accessible vault number, {@link Integer#MAX_VALUE} for admins,
+     *         or {@code 0} if the player may not access any vaults
+     */
+    public static int calculateVaultAllowance(Player player) {
+        if (player.hasPermission(ADMIN)) return Integer.MAX_VALUE;
 
-        for (int i = count; i <= Options.getMAX_VAULT_COUNT(); i++) {
-            if (hasPerm(player, PV_AMOUNT + i)) {
-                return true;
+        for (int i = Options.getMAX_VAULT_COUNT(); i > 0; i--) {
+            if (player.hasPermission(PV_AMOUNT + i)) {
+                return i;
             }
         }
 
-        return false;
+        return 0;
     }
 
 }
@@ -36,4 +36,15 @@ public class Scheduler {
     public void runAsync(Runnable runnable) {
         scheduler.runTaskAsynchronously(plugin, runnable);
     }
+
+    /**
+     * Repeatedly executes the provided {@code Runnable} on the server's main thread.
+     *
+     * @param runnable the {@code Runnable} task to be executed; must not be null
+     * @param delayTicks the number of ticks before the first execution
+     * @param periodTicks the number of ticks between executions
+     */
+    public void runTimer(Runnable runnable, long delayTicks, long periodTicks) {
+        scheduler.runTaskTimer(plugin, runnable, delayTicks, periodTicks);
+    }
 }
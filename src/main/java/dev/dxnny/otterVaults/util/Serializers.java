@@ -1,62 +1,282 @@
 package dev.dxnny.otterVaults.util;
 
+import dev.dxnny.otterVaults.metrics.VaultMetrics;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.util.io.BukkitObjectInputStream;
-import org.bukkit.util.io.BukkitObjectOutputStream;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.util.function.IntPredicate;
 import java.util.logging.Level;
 
 import static dev.dxnny.otterVaults.OtterVaults.INSTANCE;
 
-@SuppressWarnings("deprecation")
+/*
+ * Compact vault format (version 1):
+ *   [magic][version][varint slot count][slot bitmap, one bit per slot]
+ *   then, for every set bit in slot order: [varint length][ItemStack#serializeAsBytes]
+ * Blobs starting with 0xACED instead are legacy BukkitObjectOutputStream streams.
+ * Slot deltas use the same layout, with a zero-length entry for each slot that was emptied.
+ */
 public class Serializers {
 
+    static final byte FORMAT_MAGIC = (byte) 0x4F;
+    static final byte FORMAT_VERSION = 1;
+    private static final XXHash64 HASH = XXHashFactory.fastestInstance().hash64();
+
     /**
-     * Serializes an array of {@code ItemStack} objects into a byte array.
+     * Serializes an array of {@code ItemStack} objects into a byte array,
+     * using the compact versioned vault format. Only non-empty slots are written.
      *
      * @param itemStacks the array of {@code ItemStack} objects to be serialized; must not be null
      * @return a byte array representing the serialized {@code ItemStack} array;
      *         returns {@code null} if an exception occurs during serialization
      */
     public static byte[] serializeInv(ItemStack[] itemStacks) {
+        byte[][] slots = serializeSlots(itemStacks, slot -> true);
+        return slots == null ? null : pack(slots);
+    }
 
+    /**
+     * Serializes the selected slots of an inventory individually, in the form they take in the
+     * compact vault format.
+     *
+     * @param itemStacks the inventory contents; must not be null
+     * @param selected which slots to serialize; the others are left {@code null}
+     * @return the serialized item of each selected slot, with {@code null} for empty slots;
+     *         returns {@code null} if an exception occurs during serialization
+     */
+    public static byte[][] serializeSlots(ItemStack[] itemStacks, IntPredicate selected) {
+        long startTime = System.nanoTime();
         try {
-            ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
-            BukkitObjectOutputStream bukkitOutput = new BukkitObjectOutputStream(byteOutput);
-
-            bukkitOutput.writeObject(itemStacks);
-            bukkitOutput.flush();
-            bukkitOutput.close();
-
-            return byteOutput.toByteArray();
+            byte[][] slots = new byte[itemStacks.length][];
+            for (int i = 0; i < itemStacks.length; i++) {
+                ItemStack item = itemStacks[i];
+                if (selected.test(i) && item != null && !item.isEmpty()) {
+                    slots[i] = item.serializeAsBytes();
+                }
+            }
+            return slots;
         } catch (Exception e) {
             INSTANCE().getLogger().log(Level.SEVERE, "Error while serializing inventory!", e);
+        } finally {
+            VaultMetrics.getSERIALIZE_LATENCY().recordSince(startTime);
         }
 
         return null;
     }
 
     /**
-     * Deserializes an array of {@code ItemStack} objects from the provided {@code InputStream}.
+     * Deserializes an array of {@code ItemStack} objects from the provided bytes.
+     * Both the compact vault format and legacy {@code BukkitObjectOutputStream}
+     * blobs are accepted; the format is detected from the leading bytes.
      *
-     * @param input the {@code InputStream} containing the serialized {@code ItemStack} data;
-     *              must not be null
+     * @param input the serialized {@code ItemStack} data; must not be null
      * @return an array of {@code ItemStack} objects if deserialization is successful;
      *         returns {@code null} if an exception occurs during deserialization
      */
     public static ItemStack[] deserializeInv(byte[] input) {
+        long startTime = System.nanoTime();
+        if (isLegacy(input)) {
+            ItemStack[] contents = deserializeLegacyInv(input);
+            VaultMetrics.getDESERIALIZE_LATENCY().recordSince(startTime);
+            return contents;
+        }
+
+        try {
+            byte[][] slots = unpack(input);
+            ItemStack[] contents = new ItemStack[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null) {
+                    contents[i] = ItemStack.deserializeBytes(slots[i]);
+                }
+            }
+            return contents;
+        } catch (Exception e) {
+            INSTANCE().getLogger().log(Level.SEVERE, "Error while deserializing inventory!", e);
+        } finally {
+            VaultMetrics.getDESERIALIZE_LATENCY().recordSince(startTime);
+        }
+
+        return null;
+    }
+
+    /**
+     * Determines if the given bytes are a legacy {@code BukkitObjectOutputStream} blob,
+     * rather than the compact vault format.
+     *
+     * @param input the serialized vault bytes
+     * @return {@code true} if the bytes use the legacy format
+     */
+    public static boolean isLegacy(byte[] input) {
+        // Java object serialization streams always start with 0xACED.
+        return input != null && input.length >= 2 && input[0] == (byte) 0xAC && input[1] == (byte) 0xED;
+    }
+
+    /**
+     * Packs per-slot item bytes into the compact vault format.
+     *
+     * @param slots the serialized item of each slot, with {@code null} for empty slots
+     * @return the packed vault bytes
+     */
+    public static byte[] pack(byte[][] slots) {
+        int bitmapLength = (slots.length + 7) >>> 3;
+        int size = 2 + varIntSize(slots.length) + bitmapLength;
+        for (byte[] slot : slots) {
+            if (slot != null) size += varIntSize(slot.length) + slot.length;
+        }
+
+        byte[] out = new byte[size];
+        out[0] = FORMAT_MAGIC;
+        out[1] = FORMAT_VERSION;
+        int pos = writeVarInt(out, 2, slots.length);
+        int bitmapStart = pos;
+        pos += bitmapLength;
+
+        for (int i = 0; i < slots.length; i++) {
+            byte[] slot = slots[i];
+            if (slot == null) continue;
+            out[bitmapStart + (i >>> 3)] |= (byte) (1 << (i & 7));
+            pos = writeVarInt(out, pos, slot.length);
+            System.arraycopy(slot, 0, out, pos, slot.length);
+            pos += slot.length;
+        }
+        return out;
+    }
+
+    /**
+     * Unpacks bytes in the compact vault format into per-slot item bytes.
+     *
+     * @param input the packed vault bytes
+     * @return the serialized item of each slot, with {@code null} for empty slots
+     * @throws IllegalArgumentException if the bytes are not in a supported compact format, or are truncated or corrupt
+     */
+    public static byte[][] unpack(byte[] input) {
+        if (input.length < 2 || input[0] != FORMAT_MAGIC) {
+            throw new IllegalArgumentException("Not a compact vault blob");
+        }
+        if (input[1] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported vault format version " + input[1]);
+        }
+
+        int[] pos = {2};
+        int slotCount = readVarInt(input, pos);
+        int bitmapStart = pos[0];
+        // Every slot takes at least a bit of the bitmap, so a count the bitmap can't fit is corrupt.
+        if (slotCount < 0 || (slotCount + 7L) >>> 3 > input.length - bitmapStart) {
+            throw new IllegalArgumentException("Invalid slot count " + slotCount);
+        }
+        pos[0] += (slotCount + 7) >>> 3;
+
+        byte[][] slots = new byte[slotCount][];
+        for (int i = 0; i < slotCount; i++) {
+            if ((input[bitmapStart + (i >>> 3)] & (1 << (i & 7))) == 0) continue;
+            int length = readVarInt(input, pos);
+            if (length < 0 || length > input.length - pos[0]) {
+                throw new IllegalArgumentException("Invalid length " + length + " of slot " + i);
+            }
+            byte[] slot = new byte[length];
+            System.arraycopy(input, pos[0], slot, 0, length);
+            pos[0] += length;
+            slots[i] = slot;
+        }
+        return slots;
+    }
+
+    /**
+     * Packs the slots that changed between two states of a vault into a delta, in the compact
+     * vault format. A changed slot holds its new item, or zero bytes if it was emptied;
+     * unchanged slots are left out.
+     *
+     * @param changes the new item of each changed slot, with an empty array for emptied slots
+     *                and {@code null} for unchanged ones
+     * @return the packed delta
+     */
+    public static byte[] packDelta(byte[][] changes) {
+        return pack(changes);
+    }
+
+    /**
+     * Applies a delta written by {@link #packDelta(byte[][])} to per-slot item bytes.
+     *
+     * @param slots the serialized item of each slot, updated in place
+     * @param delta the packed delta
+     * @throws IllegalArgumentException if the delta is not in a supported compact format, or is truncated or corrupt
+     */
+    public static void applyDelta(byte[][] slots, byte[] delta) {
+        byte[][] changes = unpack(delta);
+        for (int i = 0; i < Math.min(slots.length, changes.length); i++) {
+            if (changes[i] != null) {
+                slots[i] = changes[i].length == 0 ? null : changes[i];
+            }
+        }
+    }
+
+    /**
+     * Computes a content hash of serialized vault bytes, used to detect
+     * saves that would write exactly what is already stored.
+     *
+     * @param data the serialized bytes; may be null
+     * @return the 64-bit xxHash and length of the bytes, or {@code null} if {@code data} is null
+     */
+    public static ContentHash contentHash(byte[] data) {
+        if (data == null) return null;
+        return new ContentHash(HASH.hash(data, 0, data.length, 0L), data.length);
+    }
+
+    /**
+     * Identifies serialized vault bytes. A save is skipped only when both the hash and the length
+     * match, so a change can't be lost to a hash collision between bytes of different sizes, and
+     * the 64-bit hash makes a collision between bytes of the same size negligible.
+     */
+    public record ContentHash(long hash, int length) {
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ItemStack[] deserializeLegacyInv(byte[] input) {
 
         ByteArrayInputStream byteInput = new ByteArrayInputStream(input);
 
         try(BukkitObjectInputStream bukkitInput = new BukkitObjectInputStream(byteInput)) {
             return (ItemStack[]) bukkitInput.readObject();
         } catch (Exception e) {
-            INSTANCE().getLogger().log(Level.SEVERE, "Error while deserializing inventory!", e);
+            INSTANCE().getLogger().log(Level.SEVERE, "Error while deserializing legacy inventory!", e);
         }
 
         return null;
     }
 
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarInt(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int readVarInt(byte[] in, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 28) throw new IllegalArgumentException("VarInt too long");
+            if (pos[0] >= in.length) throw new IllegalArgumentException("Truncated VarInt");
+            b = in[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
 }